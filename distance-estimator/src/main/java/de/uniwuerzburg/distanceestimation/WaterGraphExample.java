@@ -115,9 +115,10 @@ public class WaterGraphExample {
     }
 
     private static ArrayList<Long> getTimes(GeoLocation start, GeoLocation dest, int repetitions) {
-        WaterGraphEstimation wge = new WaterGraphEstimation(waterGraphPreprocessing.getWaterGraphs(),
-                waterGraphPreprocessing.getSimpleSplitWaterAreas(), waterGraphPreprocessing.getWaterGraphEdges(),
-                new EuclideanDistance(),true, waterGraphPreprocessing.getNewBridges(), waterGraphPreprocessing.getWaterAreaTree());
+        WaterGraphEstimation wge = new WaterGraphEstimation(waterGraphPreprocessing.getWaterBoundaryGraph(),
+                waterGraphPreprocessing.getSimpleSplitWaterAreas(), waterGraphPreprocessing.getWaterGraphEdgeIndex(),
+                new EuclideanDistance(),true, waterGraphPreprocessing.getNewBridges(), waterGraphPreprocessing.getWaterAreaTree(),
+                waterGraphPreprocessing.getSegmentGrid(), waterGraphPreprocessing.getWaterRaster(), false);
 
         ArrayList<Long> measuredTimes = new ArrayList<>();
 
@@ -0,0 +1,71 @@
+package de.uniwuerzburg.distanceestimation;
+
+import de.uniwuerzburg.distanceestimation.estimation.EuclideanDistance;
+import de.uniwuerzburg.distanceestimation.estimation.WaterGraphEstimation;
+import de.uniwuerzburg.distanceestimation.models.DistanceEstimate;
+import de.uniwuerzburg.distanceestimation.models.Factory;
+import de.uniwuerzburg.distanceestimation.models.GeoLocation;
+import de.uniwuerzburg.distanceestimation.preprocessing.WaterGraphPreprocessing;
+import de.uniwuerzburg.distanceestimation.util.DurationTimer;
+
+import java.util.ArrayList;
+
+/*
+ * Compares Dijkstra and A* (estimation.water-graph.goal-directed) of the water graph approach on long queries that
+ * cross the Main several times.
+ */
+public class WaterGraphSearchBenchmark {
+    private static final WaterGraphPreprocessing waterGraphPreprocessing = new WaterGraphPreprocessing(false);
+
+    public static void main(String[] args) {
+        Factory.FACTORY.createPoint();
+        waterGraphPreprocessing.preprocessing(new EuclideanDistance());
+
+        WaterGraphEstimation dijkstra = new WaterGraphEstimation(waterGraphPreprocessing, new EuclideanDistance(), false, false);
+        WaterGraphEstimation aStar = new WaterGraphEstimation(waterGraphPreprocessing, new EuclideanDistance(), false, true);
+
+        // throw away first results
+        getTimes(dijkstra, new GeoLocation(50.01, 9.121876), new GeoLocation(49.781181, 9.973124));
+        getTimes(aStar, new GeoLocation(50.01, 9.121876), new GeoLocation(49.781181, 9.973124));
+
+        // Aschaffenburg -> Würzburg
+        compare("Aschaffenburg -> Würzburg", dijkstra, aStar,
+                new GeoLocation(49.985769, 9.121876), new GeoLocation(49.781181, 9.973124));
+        // Aschaffenburg -> Schweinfurt
+        compare("Aschaffenburg -> Schweinfurt", dijkstra, aStar,
+                new GeoLocation(49.985769, 9.121876), new GeoLocation(50.049236, 10.221437));
+        // Würzburg -> Bamberg
+        compare("Würzburg -> Bamberg", dijkstra, aStar,
+                new GeoLocation(49.781181, 9.973124), new GeoLocation(49.891533, 10.886928));
+        // alte Mainbrücke
+        compare("alte Mainbrücke", dijkstra, aStar,
+                new GeoLocation(49.793848, 9.918994), new GeoLocation(49.793056, 9.936595));
+
+        System.out.println("done!");
+    }
+
+    private static void compare(String name, WaterGraphEstimation dijkstra, WaterGraphEstimation aStar,
+                                GeoLocation start, GeoLocation dest) {
+        System.out.println("[" + name + "]");
+        double dijkstraAvg = getTimes(dijkstra, start, dest).stream().mapToDouble(d -> d).average().orElse(-1.0);
+        double aStarAvg = getTimes(aStar, start, dest).stream().mapToDouble(d -> d).average().orElse(-1.0);
+        System.out.println("\tDijkstra: " + dijkstraAvg + "ns");
+        System.out.println("\tA*: " + aStarAvg + "ns");
+        System.out.println("---");
+    }
+
+    private static ArrayList<Long> getTimes(WaterGraphEstimation wge, GeoLocation start, GeoLocation dest) {
+        ArrayList<Long> measuredTimes = new ArrayList<>();
+
+        DistanceEstimate de = null;
+        for (int i = 0; i < 10_000; i++) {
+            DurationTimer timerEstimation = new DurationTimer(true);
+            de = wge.estimateDistance(start, dest);
+            timerEstimation.stop();
+            measuredTimes.add(timerEstimation.getDuration());
+        }
+
+        System.out.println("\t estimated distance: " + de.getMeters());
+        return measuredTimes;
+    }
+}
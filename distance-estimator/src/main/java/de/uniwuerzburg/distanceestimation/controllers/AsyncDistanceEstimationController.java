@@ -0,0 +1,52 @@
+package de.uniwuerzburg.distanceestimation.controllers;
+
+import de.uniwuerzburg.distanceestimation.controllers.models.ClusterRequest;
+import de.uniwuerzburg.distanceestimation.controllers.models.ClusterResponse;
+import de.uniwuerzburg.distanceestimation.controllers.models.DistanceResponse;
+import de.uniwuerzburg.distanceestimation.controllers.models.PathResponse;
+import de.uniwuerzburg.distanceestimation.estimation.ApproachType;
+import de.uniwuerzburg.distanceestimation.models.GeoLocation;
+import de.uniwuerzburg.distanceestimation.services.DistanceEstimationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+// same as DistanceEstimationController, but the servlet thread is released while the estimation is running
+@RestController
+@RequestMapping("/estimation/async")
+public class AsyncDistanceEstimationController {
+    private final DistanceEstimationService distanceEstimationService;
+
+    @Autowired
+    public AsyncDistanceEstimationController(DistanceEstimationService distanceEstimationService) {
+        this.distanceEstimationService = distanceEstimationService;
+    }
+
+    @GetMapping("/path")
+    public @ResponseBody CompletableFuture<PathResponse> path(@RequestParam double startLat, @RequestParam double startLon,
+                                                              @RequestParam double destLat, @RequestParam double destLon,
+                                                              @RequestParam ApproachType approachType) {
+        return distanceEstimationService.estimateDistanceAsync(approachType, new GeoLocation(startLat, startLon),
+                        new GeoLocation(destLat, destLon), true)
+                .thenApply(result -> new PathResponse(result.path() == null ? null : Arrays.stream(result.path().getCoordinates()).map(GeoLocation::new).toList(),
+                        result.timeNs(), result.distance()));
+    }
+
+    @GetMapping("/distance")
+    public @ResponseBody CompletableFuture<DistanceResponse> distance(@RequestParam double startLat, @RequestParam double startLon,
+                                                                      @RequestParam double destLat, @RequestParam double destLon,
+                                                                      @RequestParam ApproachType approachType) {
+        return distanceEstimationService.estimateDistanceAsync(approachType, new GeoLocation(startLat, startLon),
+                        new GeoLocation(destLat, destLon), false)
+                .thenApply(result -> new DistanceResponse(result.timeNs(), result.distance()));
+    }
+
+    @PostMapping("/cluster")
+    public @ResponseBody CompletableFuture<ClusterResponse> cluster(@RequestBody ClusterRequest request) {
+        final long start = System.nanoTime();
+        return distanceEstimationService.clusterAsync(request.approachType(), request.k(), request.locations())
+                .thenApply(result -> new ClusterResponse(result, request.k(), request.approachType(), System.nanoTime() - start));
+    }
+}
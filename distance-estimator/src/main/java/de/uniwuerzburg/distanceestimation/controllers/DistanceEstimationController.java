@@ -1,23 +1,40 @@
 package de.uniwuerzburg.distanceestimation.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import de.uniwuerzburg.distanceestimation.controllers.models.*;
 import de.uniwuerzburg.distanceestimation.estimation.ApproachType;
 import de.uniwuerzburg.distanceestimation.estimation.DistanceEstimation;
+import de.uniwuerzburg.distanceestimation.models.BinaryDistanceMatrix;
+import de.uniwuerzburg.distanceestimation.models.DistanceEstimate;
 import de.uniwuerzburg.distanceestimation.models.GeoLocation;
 import de.uniwuerzburg.distanceestimation.services.DistanceEstimationService;
+import de.uniwuerzburg.distanceestimation.services.DistanceEstimationService.VersionedMatrix;
+import de.uniwuerzburg.distanceestimation.services.EstimationCacheService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
+import java.util.List;
 
 @RestController
 @RequestMapping("/estimation")
 public class DistanceEstimationController {
     private final DistanceEstimationService distanceEstimationService;
+    private final EstimationCacheService estimationCacheService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public DistanceEstimationController(DistanceEstimationService distanceEstimationService) {
+    public DistanceEstimationController(DistanceEstimationService distanceEstimationService,
+                                        EstimationCacheService estimationCacheService, ObjectMapper objectMapper) {
         this.distanceEstimationService = distanceEstimationService;
+        this.estimationCacheService = estimationCacheService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping("/path")
@@ -27,7 +44,7 @@ public class DistanceEstimationController {
 
         var result = distanceEstimationService.estimateDistance(approachType, new GeoLocation(startLat, startLon), new GeoLocation(destLat, destLon), true);
         return new PathResponse(result.path() == null ? null : Arrays.stream(result.path().getCoordinates()).map(GeoLocation::new).toList(),
-                result.timeNs(), result.result() == null ? result.resultCircuity() : result.result());
+                result.timeNs(), result.distance());
     }
 
     @GetMapping("/crossesWater")
@@ -43,7 +60,71 @@ public class DistanceEstimationController {
                                                    @RequestParam double destLat, @RequestParam double destLon,
                                                    @RequestParam ApproachType approachType) {
         var result = distanceEstimationService.estimateDistance(approachType, new GeoLocation(startLat, startLon), new GeoLocation(destLat, destLon), false);
-        return new DistanceResponse(result.timeNs(), result.result() == null ? result.resultCircuity() : result.result());
+        return new DistanceResponse(result.timeNs(), result.distance());
+    }
+
+    @GetMapping("/compare")
+    public @ResponseBody List<ApproachDistanceResponse> compare(@RequestParam double startLat, @RequestParam double startLon,
+                                                                @RequestParam double destLat, @RequestParam double destLon,
+                                                                @RequestParam List<ApproachType> approachTypes) {
+        var results = distanceEstimationService.estimateDistance(approachTypes, new GeoLocation(startLat, startLon), new GeoLocation(destLat, destLon));
+        return results.stream().map(result -> new ApproachDistanceResponse(result.metric().getApproachType(),
+                result.timeNs(), result.distance(), result.failed(), result.errorMsg())).toList();
+    }
+
+    @PostMapping("/batch")
+    public @ResponseBody BatchResponse batch(@RequestBody BatchRequest request) {
+        final long start = System.nanoTime();
+        var results = distanceEstimationService.estimateDistances(request.approachType(), request.pairs());
+        final long end = System.nanoTime();
+        return new BatchResponse(results.stream().map(r -> new DistanceResponse(r.timeNs(), r.distance())).toList(),
+                request.approachType(), end - start);
+    }
+
+    @PostMapping(value = "/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> batchStream(@RequestBody BatchRequest request) {
+        StreamingResponseBody body = out -> distanceEstimationService.streamDistances(request.approachType(), request.pairs(),
+                chunk -> {
+                    for (var r : chunk) {
+                        writeLine(out, new DistanceResponse(r.timeNs(), r.distance()));
+                    }
+                    flush(out);
+                });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @PostMapping(value = "/batch", produces = BinaryDistanceMatrix.MEDIA_TYPE_VALUE)
+    public ResponseEntity<byte[]> batchBinary(@RequestBody BatchRequest request,
+                                              @RequestParam(defaultValue = "FLOAT32") BinaryDistanceMatrix.Precision precision) {
+        var result = distanceEstimationService.estimateVersionedBatch(request.approachType(), request.pairs());
+        return binaryResponse(request.approachType(), result, precision);
+    }
+
+    @PostMapping("/matrix")
+    public @ResponseBody MatrixResponse matrix(@RequestBody MatrixRequest request) {
+        final long start = System.nanoTime();
+        var result = distanceEstimationService.estimateMatrix(request.approachType(), request.sources(), request.targets());
+        final long end = System.nanoTime();
+        Double[][] distancesMeters = Arrays.stream(result).map(DistanceEstimationController::toMeters).toArray(Double[][]::new);
+        return new MatrixResponse(distancesMeters, request.approachType(), end - start);
+    }
+
+    @PostMapping(value = "/matrix", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> matrixStream(@RequestBody MatrixRequest request) {
+        StreamingResponseBody body = out -> distanceEstimationService.streamMatrix(request.approachType(),
+                request.sources(), request.targets(), (sourceIndex, row) -> {
+                    writeLine(out, new MatrixRowResponse(sourceIndex, toMeters(row)));
+                    flush(out);
+                });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    @PostMapping(value = "/matrix", produces = BinaryDistanceMatrix.MEDIA_TYPE_VALUE)
+    public ResponseEntity<byte[]> matrixBinary(@RequestBody MatrixRequest request,
+                                               @RequestParam(defaultValue = "FLOAT32") BinaryDistanceMatrix.Precision precision) {
+        var result = distanceEstimationService.estimateVersionedMatrix(request.approachType(), request.sources(),
+                request.targets());
+        return binaryResponse(request.approachType(), result, precision);
     }
 
     @GetMapping("/overheadMeasurement")
@@ -61,4 +142,36 @@ public class DistanceEstimationController {
         final long end = System.nanoTime();
         return new ClusterResponse(result, request.k(), request.approachType(), end - start);
     }
+
+    @GetMapping("/cache")
+    public @ResponseBody CacheStatsResponse cacheStats() {
+        return estimationCacheService.getStats();
+    }
+
+    private ResponseEntity<byte[]> binaryResponse(ApproachType approachType, VersionedMatrix matrix,
+                                                  BinaryDistanceMatrix.Precision precision) {
+        byte[] body = BinaryDistanceMatrix.encode(approachType, matrix.datasetVersion(), matrix.distances(), precision);
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(BinaryDistanceMatrix.MEDIA_TYPE_VALUE)).body(body);
+    }
+
+    private void writeLine(OutputStream out, Object line) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(line));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void flush(OutputStream out) {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Double[] toMeters(DistanceEstimate[] row) {
+        return Arrays.stream(row).map(d -> d == null ? null : d.getMeters()).toArray(Double[]::new);
+    }
 }
@@ -0,0 +1,12 @@
+package de.uniwuerzburg.distanceestimation.controllers.models;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import de.uniwuerzburg.distanceestimation.estimation.ApproachType;
+import de.uniwuerzburg.distanceestimation.models.DistanceEstimate;
+import de.uniwuerzburg.distanceestimation.models.DistanceEstimateSerializer;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+public record ApproachDistanceResponse(ApproachType approachType, long durationNanos,
+                                       @JsonSerialize(using = DistanceEstimateSerializer.class) @Schema(implementation = Double.class) DistanceEstimate distanceMeters,
+                                       boolean failed, String errorMsg) {
+}
@@ -0,0 +1,9 @@
+package de.uniwuerzburg.distanceestimation.controllers.models;
+
+import de.uniwuerzburg.distanceestimation.estimation.ApproachType;
+import de.uniwuerzburg.distanceestimation.models.LocationPair;
+
+import java.util.List;
+
+public record BatchRequest(List<LocationPair> pairs, ApproachType approachType) {
+}
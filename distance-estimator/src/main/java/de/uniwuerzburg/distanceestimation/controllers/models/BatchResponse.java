@@ -0,0 +1,8 @@
+package de.uniwuerzburg.distanceestimation.controllers.models;
+
+import de.uniwuerzburg.distanceestimation.estimation.ApproachType;
+
+import java.util.List;
+
+public record BatchResponse(List<DistanceResponse> distances, ApproachType approachType, long durationNanos) {
+}
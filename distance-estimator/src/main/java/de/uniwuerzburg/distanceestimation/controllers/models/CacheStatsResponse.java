@@ -0,0 +1,5 @@
+package de.uniwuerzburg.distanceestimation.controllers.models;
+
+public record CacheStatsResponse(boolean enabled, long size, long hitCount, long missCount, double hitRate,
+                                 long evictionCount) {
+}
@@ -0,0 +1,9 @@
+package de.uniwuerzburg.distanceestimation.controllers.models;
+
+import de.uniwuerzburg.distanceestimation.estimation.ApproachType;
+import de.uniwuerzburg.distanceestimation.models.GeoLocation;
+
+import java.util.List;
+
+public record MatrixRequest(List<GeoLocation> sources, List<GeoLocation> targets, ApproachType approachType) {
+}
@@ -0,0 +1,7 @@
+package de.uniwuerzburg.distanceestimation.controllers.models;
+
+import de.uniwuerzburg.distanceestimation.estimation.ApproachType;
+
+// rows correspond to sources, columns to targets. Failed estimations are null
+public record MatrixResponse(Double[][] distancesMeters, ApproachType approachType, long durationNanos) {
+}
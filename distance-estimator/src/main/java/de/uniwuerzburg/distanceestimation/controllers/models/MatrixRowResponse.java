@@ -0,0 +1,5 @@
+package de.uniwuerzburg.distanceestimation.controllers.models;
+
+// single row of a streamed matrix, sourceIndex refers to the position in the requested sources
+public record MatrixRowResponse(int sourceIndex, Double[] distancesMeters) {
+}
@@ -1,6 +1,8 @@
 package de.uniwuerzburg.distanceestimation.estimation;
 
+import de.uniwuerzburg.distanceestimation.models.ApproachResult;
 import de.uniwuerzburg.distanceestimation.models.DirectLine;
+import de.uniwuerzburg.distanceestimation.models.DistanceEstimate;
 import de.uniwuerzburg.distanceestimation.models.GeoLocation;
 import org.locationtech.jts.geom.LineString;
 
@@ -9,6 +11,21 @@ import java.util.Objects;
 public abstract class AirlineDistance implements DistanceEstimation {
     public static final int EARTH_RADIUS = 6371;
 
+    @Override
+    public abstract DistanceEstimate estimateDistance(GeoLocation start, GeoLocation dest);
+
+    public DistanceEstimate estimateDistance(GeoLocation start, GeoLocation dest, QueryContext context) {
+        return context.computeIfAbsent(new BaseDistanceKey(getApproachType(), start, dest),
+                () -> estimateDistance(start, dest));
+    }
+
+    @Override
+    public ApproachResult estimate(GeoLocation start, GeoLocation dest, boolean includePath, QueryContext context) {
+        DistanceEstimate distance = estimateDistance(start, dest, context);
+        return new ApproachResult(distance, distance.multiply(CIRCUITY_FACTOR_GERMANY),
+                includePath ? getPath(start, dest) : null);
+    }
+
     @Override
     public LineString getPath(GeoLocation start, GeoLocation dest) {
         DirectLine line = new DirectLine(start, dest);
@@ -25,4 +42,7 @@ public abstract class AirlineDistance implements DistanceEstimation {
     public int hashCode() {
         return Objects.hash();
     }
+
+    private record BaseDistanceKey(ApproachType type, GeoLocation start, GeoLocation dest) {
+    }
 }
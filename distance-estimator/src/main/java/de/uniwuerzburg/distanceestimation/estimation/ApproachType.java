@@ -52,6 +52,10 @@ public enum ApproachType {
         }
     }
 
+    public boolean isIoBound() {
+        return this == OSRM;
+    }
+
     public boolean isOverheadGraph(){
         switch (this){
             case OVERHEAD_GRAPH_128, OVERHEAD_GRAPH_256, OVERHEAD_GRAPH_512 -> {
@@ -1,14 +1,16 @@
 package de.uniwuerzburg.distanceestimation.estimation;
 
-import com.github.davidmoten.rtree.RTree;
 import de.uniwuerzburg.distanceestimation.models.*;
 import de.uniwuerzburg.distanceestimation.models.mapInfo.Bridge;
 import de.uniwuerzburg.distanceestimation.models.mapInfo.WaterArea;
 import de.uniwuerzburg.distanceestimation.preprocessing.BridgeRoutePreprocessing;
+import de.uniwuerzburg.distanceestimation.spatial.PackedRTree;
+import de.uniwuerzburg.distanceestimation.spatial.SegmentGrid;
 import de.uniwuerzburg.distanceestimation.util.Debug;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
 
 import java.util.*;
 
@@ -16,22 +18,35 @@ public class BridgeRouteEstimation extends DirectLineEstimation {
     private final boolean recalculated;
     private final boolean splitWaterAreas;
     protected final Map<WaterArea, Set<Bridge>> waterAreasWithBridgesMap;
-    private List<Bridge> lastBridgesUsed;
+    // bridges of this approach indexed by dense ids and the ids of the bridges of each water area (by area id)
+    private final Bridge[] bridges;
+    private final int[][] bridgeIdsByArea;
 
     private BridgeRouteEstimation(Map<WaterArea, Set<Bridge>> waterAreasWithBridgesMap,
-                                 Map<WaterArea, Geometry> simpleWaterAreasMap,
-                                 RTree<WaterArea, com.github.davidmoten.rtree.geometry.Geometry> waterAreaTree,
+                                 Map<WaterArea, PreparedGeometry> simpleWaterAreasMap,
+                                 PackedRTree<WaterArea> waterAreaTree, SegmentGrid segmentGrid,
                                  AirlineDistance metric, boolean recalculated, boolean splitWaterAreas) {
-        super(simpleWaterAreasMap, new ArrayList<>(waterAreasWithBridgesMap.keySet()), waterAreaTree, metric);
+        super(simpleWaterAreasMap, new ArrayList<>(waterAreasWithBridgesMap.keySet()), waterAreaTree, segmentGrid,
+                metric);
         this.waterAreasWithBridgesMap = waterAreasWithBridgesMap;
         this.recalculated = recalculated;
         this.splitWaterAreas = splitWaterAreas;
+
+        Map<Bridge, Integer> bridgeIds = new HashMap<>();
+        Map<WaterArea, int[]> bridgeIdsByAreaMap = new HashMap<>();
+        waterAreasWithBridgesMap.forEach((w, areaBridges) -> bridgeIdsByAreaMap.put(w, areaBridges.stream()
+                .mapToInt(b -> bridgeIds.computeIfAbsent(b, k -> bridgeIds.size()))
+                .toArray()));
+        this.bridges = new Bridge[bridgeIds.size()];
+        bridgeIds.forEach((b, id) -> bridges[id] = b);
+        this.bridgeIdsByArea = byId(bridgeIdsByAreaMap, int[][]::new);
     }
 
     public BridgeRouteEstimation(BridgeRoutePreprocessing bridgeRoutePreprocessing, AirlineDistance metric, boolean recalculated) {
         this(bridgeRoutePreprocessing.getSplitWaterAreasWithBridges(),
                 bridgeRoutePreprocessing.getSimpleSplitWaterAreasMap(),
                 bridgeRoutePreprocessing.getSplitWaterAreasTree(),
+                bridgeRoutePreprocessing.getSplitSegmentGrid(),
                 metric,recalculated, true);
     }
 
@@ -40,35 +55,47 @@ public class BridgeRouteEstimation extends DirectLineEstimation {
             return new BridgeRouteEstimation(bridgeRoutePreprocessing.getSplitWaterAreasWithBridges(),
                     bridgeRoutePreprocessing.getSimpleSplitWaterAreasMap(),
                     bridgeRoutePreprocessing.getSplitWaterAreasTree(),
+                    bridgeRoutePreprocessing.getSplitSegmentGrid(),
                     metric,recalculated, true);
         }
         else {
             return new BridgeRouteEstimation(bridgeRoutePreprocessing.getWaterAreasWithBridgesMap(),
                     bridgeRoutePreprocessing.getSimpleWaterAreasMap(),
                     bridgeRoutePreprocessing.getWaterAreaTree(),
+                    bridgeRoutePreprocessing.getSegmentGrid(),
                     metric,recalculated, false);
         }
     }
 
     @Override
-    public DistanceEstimate estimateDistance(GeoLocation start, GeoLocation dest) {
-        lastBridgesUsed = new ArrayList<>();
-        lastDistanceCircuity = DistanceEstimate.zero;
-
+    public ApproachResult estimate(GeoLocation start, GeoLocation dest, boolean includePath, QueryContext context) {
+        GeoLocation pathStart = start;
+        GeoLocation pathDest = dest;
         if (start.compareTo(dest) < 0) {
             var tmp = start;
             start = dest;
             dest = tmp;
         }
 
-        var res = calculateRecursive(start, dest, DistanceEstimate.zero, new HashSet<>(),
-                recalculated, 1, null, null);
+        Route route = new Route();
+        calculateRecursive(start, dest, route, context, new BitSet(bridges.length), recalculated, 1, null, null);
         Debug.message("---");
-        return res;
+
+        LineString path = null;
+        if (includePath) {
+            Coordinate[] coordinates = new Coordinate[route.bridgesUsed.size() + 2];
+            coordinates[0] = pathStart;
+            for (int i = 0; i < route.bridgesUsed.size(); i++) {
+                coordinates[i + 1] = route.bridgesUsed.get(i).geom().getCoordinate();
+            }
+            coordinates[route.bridgesUsed.size() + 1] = pathDest;
+            path = Factory.FACTORY.createLineString(coordinates);
+        }
+        return new ApproachResult(route.distance, route.distanceCircuity, path);
     }
 
-    private DistanceEstimate calculateRecursive(GeoLocation start, GeoLocation dest, DistanceEstimate savedDistance,
-                                                Set<Bridge> previousBridges, boolean recalculated, int step,
+    private void calculateRecursive(GeoLocation start, GeoLocation dest, Route route, QueryContext context,
+                                                BitSet previousBridges, boolean recalculated, int step,
                                                 //These parameters are only used in not-recalculated mode, else they get overwritten each time
                                                 Map<LineString, WaterArea> intersectionWaterAreasMap,
                                                 List<Map.Entry<LineString, Double>> intersectionsSortedByDistanceList) {
@@ -79,9 +106,9 @@ public class BridgeRouteEstimation extends DirectLineEstimation {
         Not-Recalculated: The intersections are always from initial start to dest and nearest/skipped ones gets removed
          */
         if (recalculated || intersectionWaterAreasMap == null) {
-            DirectLine directLine = new DirectLine(start, dest);
+            DirectLine directLine = getDirectLine(start, dest, context);
             Debug.startDebugTimer();
-            intersectionWaterAreasMap = getIntersections(directLine, true);
+            intersectionWaterAreasMap = getIntersections(directLine, true, context);
             Debug.stopDebugTimer("Get all intersections of Start-Dest-Line with Water Areas");
             Debug.startDebugTimer();
             intersectionsSortedByDistanceList = sortIntersectionsByDistance(directLine, intersectionWaterAreasMap, step);
@@ -91,30 +118,30 @@ public class BridgeRouteEstimation extends DirectLineEstimation {
         // no Water Areas remaining
         if (intersectionsSortedByDistanceList.isEmpty()) {
             Debug.message("No Intersections with Water Areas remaining.");
-            return calculateDistanceWithMetric(start, dest, savedDistance);
+            route.addSegment(metric.estimateDistance(start, dest, context));
+            return;
         }
 
 
         // Find nearest Bridge of nearest Intersection
         Debug.startDebugTimer();
         int nextIndexWhenNotRecalculating = 0;
-        Bridge nearestBridge = null;
+        int nearestBridgeId = -1;
         boolean bridgeFound = false;
         for (Map.Entry<LineString, Double> entry : intersectionsSortedByDistanceList) {
             LineString i = entry.getKey();
             WaterArea w = intersectionWaterAreasMap.get(i);
-            Set<Bridge> bridges = waterAreasWithBridgesMap.get(w);
             double minDistance = Double.MAX_VALUE;
-            for (Bridge b : bridges) {
-                double distance = i.distance(b.geom());
+            for (int b : bridgeIdsByArea[w.getId()]) {
+                double distance = i.distance(bridges[b].geom());
                 if (distance < minDistance) {
                     minDistance = distance;
-                    nearestBridge = b;
+                    nearestBridgeId = b;
                 }
             }
             nextIndexWhenNotRecalculating++;
             // should not lead to previous bridges -> infinity loop
-            if (nearestBridge == null || !previousBridges.contains(nearestBridge)) {
+            if (nearestBridgeId == -1 || !previousBridges.get(nearestBridgeId)) {
                 bridgeFound = true;
                 Debug.message("Intersection: " + i.getCoordinate().y + " " + i.getCoordinate().x +
                         " with Water Area " + w.getName());
@@ -123,8 +150,9 @@ public class BridgeRouteEstimation extends DirectLineEstimation {
         }
         Debug.stopDebugTimer("Find nearest Bridge of nearest (not skipped) Intersection");
 
-        if (nearestBridge == null || !bridgeFound) {
-            return calculateDistanceWithMetric(start, dest, savedDistance);
+        if (nearestBridgeId == -1 || !bridgeFound) {
+            route.addSegment(metric.estimateDistance(start, dest, context));
+            return;
         }
         // In not-recalculated mode, remove all skipped and the used intersection from
         if (!recalculated) {
@@ -134,16 +162,17 @@ public class BridgeRouteEstimation extends DirectLineEstimation {
 
         // Calculate Distance to Bridge with Metric
         Debug.startDebugTimer();
+        Bridge nearestBridge = bridges[nearestBridgeId];
         var anyBridgePoint = new GeoLocation(nearestBridge.geom().getCoordinate());    //Any Point should be okay
-        savedDistance = calculateDistanceWithMetric(start, anyBridgePoint, savedDistance);
+        route.addSegment(metric.estimateDistance(start, anyBridgePoint, context));
 
-        lastBridgesUsed.add(nearestBridge);
-        previousBridges.add(nearestBridge);
+        route.bridgesUsed.add(nearestBridge);
+        previousBridges.set(nearestBridgeId);
 
         Debug.stopDebugTimer("Calculate Distance to Bridge with Metric");
 
         // Recursive call with Bridge as new start
-        return calculateRecursive(anyBridgePoint, dest, savedDistance, previousBridges,
+        calculateRecursive(anyBridgePoint, dest, route, context, previousBridges,
                 recalculated, step + 1, intersectionWaterAreasMap, intersectionsSortedByDistanceList);
     }
 
@@ -154,22 +183,7 @@ public class BridgeRouteEstimation extends DirectLineEstimation {
             dest = tmp;
         }
 
-        DirectLine directLine = new DirectLine(start, dest);
-        Map<LineString, WaterArea> intersectionWaterAreasMap = getIntersections(directLine, true);
-
-        return !intersectionWaterAreasMap.isEmpty();
-    }
-
-    @Override
-    public LineString getPath(GeoLocation start, GeoLocation dest) {
-        estimateDistance(start, dest);
-        Coordinate[] coordinates = new Coordinate[lastBridgesUsed.size() + 2];
-        coordinates[0] = start;
-        for (int i = 0; i < lastBridgesUsed.size(); i++) {
-            coordinates[i + 1] = lastBridgesUsed.get(i).geom().getCoordinate();
-        }
-        coordinates[lastBridgesUsed.size() + 1] = dest;
-        return Factory.FACTORY.createLineString(coordinates);
+        return crossesWater(new DirectLine(start, dest), true);
     }
 
     @Override
@@ -190,7 +204,7 @@ public class BridgeRouteEstimation extends DirectLineEstimation {
 
     @Override
     public DistanceEstimation copyApproach() {
-        return new BridgeRouteEstimation(waterAreasWithBridgesMap, simpleWaterAreasMap, waterAreaTree, metric,
+        return new BridgeRouteEstimation(waterAreasWithBridgesMap, simpleWaterAreasMap, waterAreaTree, segmentGrid, metric,
                 recalculated, splitWaterAreas);
     }
 
@@ -200,15 +214,23 @@ public class BridgeRouteEstimation extends DirectLineEstimation {
         if (o == null || getClass() != o.getClass()) return false;
         if (!super.equals(o)) return false;
         BridgeRouteEstimation that = (BridgeRouteEstimation) o;
-        return recalculated == that.recalculated && Objects.equals(waterAreasWithBridgesMap, that.waterAreasWithBridgesMap) && Objects.equals(lastBridgesUsed, that.lastBridgesUsed);
+        return recalculated == that.recalculated && Objects.equals(waterAreasWithBridgesMap, that.waterAreasWithBridgesMap);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(super.hashCode(), recalculated, waterAreasWithBridgesMap, lastBridgesUsed);
+        return Objects.hash(super.hashCode(), recalculated, waterAreasWithBridgesMap);
     }
 
-    public List<Bridge> getLastBridgesUsed() {
-        return lastBridgesUsed;
+    // accumulates the result of a single query while recursing over the bridges
+    private static final class Route {
+        private DistanceEstimate distance = DistanceEstimate.zero;
+        private DistanceEstimate distanceCircuity = DistanceEstimate.zero;
+        private final List<Bridge> bridgesUsed = new ArrayList<>();
+
+        private void addSegment(DistanceEstimate segment) {
+            distance = distance.add(segment);
+            distanceCircuity = distanceCircuity.add(segment.multiply(CIRCUITY_FACTOR_GERMANY));
+        }
     }
 }
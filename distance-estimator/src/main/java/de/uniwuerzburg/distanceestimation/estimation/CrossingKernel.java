@@ -0,0 +1,217 @@
+package de.uniwuerzburg.distanceestimation.estimation;
+
+import de.uniwuerzburg.distanceestimation.spatial.SegmentGrid;
+import org.locationtech.jts.algorithm.LineIntersector;
+import org.locationtech.jts.algorithm.RobustLineIntersector;
+import org.locationtech.jts.algorithm.locate.PointOnGeometryLocator;
+import org.locationtech.jts.algorithm.locate.SimplePointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Location;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedPolygon;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Crossings of a single segment (the direct line) with a water area, without the overlay of JTS. The segment is walked
+ * against every segment of the boundary with a RobustLineIntersector. Crossings are parameters along the segment, 0 at
+ * its start and 1 at its end.
+ */
+final class CrossingKernel {
+    private static final double[] NO_PARAMETERS = new double[0];
+    // crossings closer than this (relative to the length of the segment) are the same, e.g. at a shared vertex
+    private static final double PARAMETER_TOLERANCE = 1e-12;
+
+    private CrossingKernel() {
+    }
+
+    /*
+     * Entry and exit parameters of the first and the last part of the segment that lies inside the area (boundary
+     * included): [firstEntry, firstExit, lastEntry, lastExit]. Null if no part of positive length lies inside.
+     */
+    static double[] firstAndLastInside(Coordinate p0, Coordinate p1, PreparedGeometry area) {
+        return firstAndLastInside(p0, p1, crossingParameters(p0, p1, area.getGeometry()), locator(area));
+    }
+
+    // same as above, for crossings with the area that were collected beforehand (sorted and distinct)
+    static double[] firstAndLastInside(Coordinate p0, Coordinate p1, double[] crossings,
+                                       PointOnGeometryLocator locator) {
+        // the parts between consecutive crossings are either completely inside or completely outside
+        double[] bounds = new double[crossings.length + 2];
+        int count = 0;
+        bounds[count++] = 0;
+        for (double t : crossings) {
+            if (t - bounds[count - 1] > PARAMETER_TOLERANCE && t < 1 - PARAMETER_TOLERANCE) {
+                bounds[count++] = t;
+            }
+        }
+        bounds[count++] = 1;
+        int parts = count - 1;
+
+        int first = 0;
+        while (first < parts && !isInside(locator, p0, p1, bounds[first], bounds[first + 1])) {
+            first++;
+        }
+        if (first == parts) {
+            return null;
+        }
+        int firstEnd = first + 1;
+        while (firstEnd < parts && isInside(locator, p0, p1, bounds[firstEnd], bounds[firstEnd + 1])) {
+            firstEnd++;
+        }
+
+        int lastEnd = parts;
+        while (lastEnd > firstEnd && !isInside(locator, p0, p1, bounds[lastEnd - 1], bounds[lastEnd])) {
+            lastEnd--;
+        }
+        if (lastEnd == firstEnd) {
+            return new double[]{bounds[first], bounds[firstEnd], bounds[first], bounds[firstEnd]};
+        }
+        int last = lastEnd - 1;
+        while (last > firstEnd && isInside(locator, p0, p1, bounds[last - 1], bounds[last])) {
+            last--;
+        }
+        return new double[]{bounds[first], bounds[firstEnd], bounds[last], bounds[lastEnd]};
+    }
+
+    // sorted distinct parameters of all points where the segment meets the boundary (or the lines) of the geometry
+    static double[] crossingParameters(Coordinate p0, Coordinate p1, Geometry geometry) {
+        Crossings crossings = new Crossings(p0, p1);
+        addCrossings(crossings, geometry);
+        return crossings.sortedParameters();
+    }
+
+    static PointOnGeometryLocator locator(PreparedGeometry area) {
+        return area instanceof PreparedPolygon polygon
+                ? polygon.getPointLocator() : new SimplePointInAreaLocator(area.getGeometry());
+    }
+
+    static Coordinate pointAt(Coordinate p0, Coordinate p1, double t) {
+        if (t == 0) {
+            return new Coordinate(p0.x, p0.y);
+        }
+        if (t == 1) {
+            return new Coordinate(p1.x, p1.y);
+        }
+        return new Coordinate(p0.x + t * (p1.x - p0.x), p0.y + t * (p1.y - p0.y));
+    }
+
+    private static boolean isInside(PointOnGeometryLocator locator, Coordinate p0, Coordinate p1, double from, double to) {
+        return locator.locate(pointAt(p0, p1, (from + to) / 2)) != Location.EXTERIOR;
+    }
+
+    private static void addCrossings(Crossings crossings, Geometry geometry) {
+        if (geometry instanceof Polygon polygon) {
+            addCrossings(crossings, polygon.getExteriorRing());
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                addCrossings(crossings, polygon.getInteriorRingN(i));
+            }
+        } else if (geometry instanceof LineString lineString) {
+            addCrossings(crossings, lineString.getCoordinateSequence());
+        } else {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                if (geometry.getGeometryN(i) != geometry) {
+                    addCrossings(crossings, geometry.getGeometryN(i));
+                }
+            }
+        }
+    }
+
+    private static void addCrossings(Crossings crossings, CoordinateSequence sequence) {
+        for (int i = 1; i < sequence.size(); i++) {
+            crossings.add(sequence.getCoordinate(i - 1), sequence.getCoordinate(i));
+        }
+    }
+
+    // crossings of the segment p0 p1 with the boundary segments of a SegmentGrid, collected per water area id
+    static final class GridCrossings implements SegmentGrid.SegmentVisitor {
+        private final Coordinate p0;
+        private final Coordinate p1;
+        private final Map<Integer, Crossings> crossingsByArea = new HashMap<>();
+
+        GridCrossings(Coordinate p0, Coordinate p1) {
+            this.p0 = p0;
+            this.p1 = p1;
+        }
+
+        @Override
+        public void visit(int area, Coordinate q0, Coordinate q1) {
+            crossingsByArea.computeIfAbsent(area, a -> new Crossings(p0, p1)).add(q0, q1);
+        }
+
+        // sorted distinct crossing parameters of every area that was met
+        Map<Integer, double[]> sortedParametersByArea() {
+            Map<Integer, double[]> result = new HashMap<>();
+            for (Map.Entry<Integer, Crossings> entry : crossingsByArea.entrySet()) {
+                double[] parameters = entry.getValue().sortedParameters();
+                if (parameters.length > 0) {
+                    result.put(entry.getKey(), parameters);
+                }
+            }
+            return result;
+        }
+    }
+
+    // crossings of the segment p0 p1 collected as parameters
+    private static final class Crossings {
+        private final LineIntersector intersector = new RobustLineIntersector();
+        private final Coordinate p0;
+        private final Coordinate p1;
+        private final double minX, minY, maxX, maxY;
+        private final double dx, dy, squaredLength;
+        private double[] parameters = NO_PARAMETERS;
+        private int count;
+
+        Crossings(Coordinate p0, Coordinate p1) {
+            this.p0 = p0;
+            this.p1 = p1;
+            this.minX = Math.min(p0.x, p1.x);
+            this.minY = Math.min(p0.y, p1.y);
+            this.maxX = Math.max(p0.x, p1.x);
+            this.maxY = Math.max(p0.y, p1.y);
+            this.dx = p1.x - p0.x;
+            this.dy = p1.y - p0.y;
+            this.squaredLength = dx * dx + dy * dy;
+        }
+
+        void add(Coordinate q0, Coordinate q1) {
+            // most boundary segments are far away from the segment
+            if (Math.max(q0.x, q1.x) < minX || Math.min(q0.x, q1.x) > maxX
+                    || Math.max(q0.y, q1.y) < minY || Math.min(q0.y, q1.y) > maxY) {
+                return;
+            }
+            intersector.computeIntersection(p0, p1, q0, q1);
+            for (int i = 0; i < intersector.getIntersectionNum(); i++) {
+                add(intersector.getIntersection(i));
+            }
+        }
+
+        private void add(Coordinate c) {
+            if (count == parameters.length) {
+                parameters = Arrays.copyOf(parameters, Math.max(8, count * 2));
+            }
+            double t = squaredLength == 0 ? 0 : ((c.x - p0.x) * dx + (c.y - p0.y) * dy) / squaredLength;
+            parameters[count++] = Math.max(0, Math.min(1, t));
+        }
+
+        double[] sortedParameters() {
+            if (count == 0) {
+                return NO_PARAMETERS;
+            }
+            Arrays.sort(parameters, 0, count);
+            int distinct = 1;
+            for (int i = 1; i < count; i++) {
+                if (parameters[i] - parameters[distinct - 1] > PARAMETER_TOLERANCE) {
+                    parameters[distinct++] = parameters[i];
+                }
+            }
+            return Arrays.copyOf(parameters, distinct);
+        }
+    }
+}
@@ -1,88 +1,200 @@
 package de.uniwuerzburg.distanceestimation.estimation;
 
-import com.github.davidmoten.rtree.Entry;
-import com.github.davidmoten.rtree.RTree;
-import com.github.davidmoten.rtree.geometry.Geometries;
-import com.github.davidmoten.rtree.geometry.Rectangle;
 import de.uniwuerzburg.distanceestimation.models.DirectLine;
 import de.uniwuerzburg.distanceestimation.models.DistanceEstimate;
 import de.uniwuerzburg.distanceestimation.models.Factory;
 import de.uniwuerzburg.distanceestimation.models.GeoLocation;
 import de.uniwuerzburg.distanceestimation.models.mapInfo.WaterArea;
+import de.uniwuerzburg.distanceestimation.spatial.PackedRTree;
+import de.uniwuerzburg.distanceestimation.spatial.SegmentGrid;
 import de.uniwuerzburg.distanceestimation.util.Debug;
 import de.uniwuerzburg.distanceestimation.util.DurationTimer;
-import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Location;
 import org.locationtech.jts.geom.Point;
-import org.locationtech.jts.geom.util.LineStringExtracter;
-import org.locationtech.jts.geom.util.PointExtracter;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
 import org.locationtech.jts.io.geojson.GeoJsonWriter;
 
 import java.util.*;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
 
 public abstract class DirectLineEstimation implements DistanceEstimation {
 
-    protected final Map<WaterArea, Geometry> simpleWaterAreasMap;
+    protected final Map<WaterArea, PreparedGeometry> simpleWaterAreasMap;
+    // simplified geometries indexed by water area id
+    private final PreparedGeometry[] simpleGeometries;
     protected final List<WaterArea> waterAreas;
     protected final AirlineDistance metric;
-    protected final RTree<WaterArea, com.github.davidmoten.rtree.geometry.Geometry> waterAreaTree;
-    protected DistanceEstimate lastDistanceCircuity;
-
-    public DirectLineEstimation(Map<WaterArea, Geometry> simpleWaterAreasMap, List<WaterArea> searchList,
-                                RTree<WaterArea, com.github.davidmoten.rtree.geometry.Geometry> waterAreaTree,
+    protected final PackedRTree<WaterArea> waterAreaTree;
+    // boundary segments of the simplified geometries if the approach has them, of the full geometries otherwise
+    protected final SegmentGrid segmentGrid;
+    // water areas of the search list indexed by their ids
+    private final WaterArea[] waterAreasById;
+
+    public DirectLineEstimation(Map<WaterArea, PreparedGeometry> simpleWaterAreasMap, List<WaterArea> searchList,
+                                PackedRTree<WaterArea> waterAreaTree, SegmentGrid segmentGrid,
                                 AirlineDistance metric) {
         this.simpleWaterAreasMap = simpleWaterAreasMap;
+        this.simpleGeometries = simpleWaterAreasMap == null
+                ? new PreparedGeometry[0] : byId(simpleWaterAreasMap, PreparedGeometry[]::new);
         this.waterAreas = searchList;
         this.metric = metric;
         this.waterAreaTree = waterAreaTree;
-        lastDistanceCircuity = DistanceEstimate.zero;
+        this.segmentGrid = segmentGrid;
+        int size = 0;
+        if (searchList != null) {
+            for (WaterArea w : searchList) {
+                size = Math.max(size, w.getId() + 1);
+            }
+        }
+        this.waterAreasById = new WaterArea[size];
+        if (segmentGrid != null) {
+            for (WaterArea w : searchList) {
+                waterAreasById[w.getId()] = w;
+            }
+        }
+    }
+
+    // values of the map in an array indexed by the ids of their water areas
+    protected static <T> T[] byId(Map<WaterArea, T> map, IntFunction<T[]> generator) {
+        int size = 0;
+        for (WaterArea w : map.keySet()) {
+            if (w.getId() < 0) {
+                throw new IllegalArgumentException("Water area without id: " + w.getName());
+            }
+            size = Math.max(size, w.getId() + 1);
+        }
+        T[] values = generator.apply(size);
+        map.forEach((w, value) -> values[w.getId()] = value);
+        return values;
+    }
+
+    protected DirectLine getDirectLine(GeoLocation start, GeoLocation dest, QueryContext context) {
+        return context.computeIfAbsent(new DirectLineKey(start, dest), () -> new DirectLine(start, dest));
+    }
+
+    protected Map<LineString, WaterArea> getIntersections(DirectLine directLine, boolean useSimpleAreaMap,
+                                                          QueryContext context) {
+        if (waterAreaTree == null) {
+            return getIntersections(directLine, useSimpleAreaMap);
+        }
+        // only approaches built from the same preprocessing share the tree and hence the water areas, e.g. the water
+        // graph approaches among each other, the bridge approaches use different areas
+        return context.computeIfAbsent(new IntersectionsKey(waterAreaTree, useSimpleAreaMap, directLine.getStart(),
+                directLine.getDest()), () -> getIntersections(directLine, useSimpleAreaMap));
     }
 
     protected boolean doesIntersect(DirectLine directLine, WaterArea waterArea, boolean useSimpleAreaMap){
+        return getArea(waterArea, useSimpleAreaMap).intersects(directLine.getLine());
+    }
+
+    // same as !getIntersections(directLine, useSimpleAreaMap).isEmpty(), but stops at the first crossed water area
+    protected boolean crossesWater(DirectLine directLine, boolean useSimpleAreaMap) {
+        if (usesSegmentGrid(useSimpleAreaMap)) {
+            return !getInsideParts(directLine, useSimpleAreaMap, true).isEmpty();
+        }
         LineString line = directLine.getLine();
-        Geometry g;
-        if (useSimpleAreaMap){
-            g = simpleWaterAreasMap.get(waterArea);
+        PackedRTree.Visitor<WaterArea> notCrossed = w -> {
+            PreparedGeometry area = getArea(w, useSimpleAreaMap);
+            return !area.intersects(line)
+                    || CrossingKernel.firstAndLastInside(directLine.getStart(), directLine.getDest(), area) == null;
+        };
+        if (waterAreaTree == null) {
+            return !waterAreas.stream().allMatch(notCrossed::visit);
+        }
+        return !waterAreaTree.search(line.getEnvelopeInternal(), notCrossed);
+    }
+
+    // water areas whose bounding box intersects the bounding box of the line
+    private List<WaterArea> getCandidates(LineString line) {
+        if (waterAreaTree == null) {
+            return waterAreas;
+        }
+        List<WaterArea> candidates = new ArrayList<>();
+        waterAreaTree.search(line.getEnvelopeInternal(), candidates::add);
+        return candidates;
+    }
+
+    private PreparedGeometry getArea(WaterArea waterArea, boolean useSimpleAreaMap) {
+        return useSimpleAreaMap ? simpleGeometries[waterArea.getId()] : waterArea.getPreparedGeom();
+    }
+
+    private boolean usesSegmentGrid(boolean useSimpleAreaMap) {
+        return segmentGrid != null && useSimpleAreaMap == (simpleWaterAreasMap != null);
+    }
+
+    /*
+     * First and last part inside (see CrossingKernel) of every water area the direct line enters, using the segment
+     * grid: only the boundary segments in the cells along the line are tested. A line without any crossing with an area
+     * lies either completely inside or completely outside of it, hence only the areas containing the start are added.
+     */
+    private Map<WaterArea, double[]> getInsideParts(DirectLine directLine, boolean useSimpleAreaMap, boolean stopAtFirst) {
+        Coordinate start = directLine.getStart();
+        Coordinate dest = directLine.getDest();
+        CrossingKernel.GridCrossings gridCrossings = new CrossingKernel.GridCrossings(start, dest);
+        segmentGrid.search(start, dest, gridCrossings);
+
+        Map<Integer, double[]> crossingsByArea = gridCrossings.sortedParametersByArea();
+        Map<WaterArea, double[]> insideParts = new HashMap<>();
+        for (Map.Entry<Integer, double[]> entry : crossingsByArea.entrySet()) {
+            WaterArea w = waterAreasById[entry.getKey()];
+            double[] inside = CrossingKernel.firstAndLastInside(start, dest, entry.getValue(),
+                    CrossingKernel.locator(getArea(w, useSimpleAreaMap)));
+            if (inside != null) {
+                insideParts.put(w, inside);
+                if (stopAtFirst) {
+                    return insideParts;
+                }
+            }
+        }
+
+        PackedRTree.Visitor<WaterArea> notContaining = w -> {
+            if (!crossingsByArea.containsKey(w.getId())
+                    && CrossingKernel.locator(getArea(w, useSimpleAreaMap)).locate(start) != Location.EXTERIOR) {
+                insideParts.put(w, new double[]{0, 1, 0, 1});
+                return !stopAtFirst;
+            }
+            return true;
+        };
+        if (waterAreaTree == null) {
+            waterAreas.stream().allMatch(notContaining::visit);
         } else {
-            g = waterArea.getGeom();
+            waterAreaTree.search(start.x, start.y, start.x, start.y, notContaining);
         }
-        return line.intersects(g);
+        return insideParts;
     }
 
     protected Map<LineString, WaterArea> getIntersections(DirectLine directLine, boolean useSimpleAreaMap) {
         LineString line = directLine.getLine();
+        Coordinate start = directLine.getStart();
+        Coordinate dest = directLine.getDest();
         Map<LineString, WaterArea> intersectionsWaterAreas = new ConcurrentHashMap<>();
 
-        List<WaterArea> interestingWaterAreas = waterAreas;
-        if (waterAreaTree != null) {
-            Envelope lineEnvelope = line.getEnvelopeInternal();
-            Rectangle searchBounds = Geometries.rectangleGeographic(
-                    lineEnvelope.getMinX(), lineEnvelope.getMinY(),
-                    lineEnvelope.getMaxX(), lineEnvelope.getMaxY());
-            interestingWaterAreas = waterAreaTree.search(searchBounds).toList().toBlocking().single()
-                    .stream().map(Entry::value).toList();
+        if (usesSegmentGrid(useSimpleAreaMap)) {
+            getInsideParts(directLine, useSimpleAreaMap, false).forEach((w, inside) -> {
+                intersectionsWaterAreas.put(toLine(start, dest, inside[0], inside[1]), w);
+                intersectionsWaterAreas.put(toLine(start, dest, inside[2], inside[3]), w);
+            });
+            return intersectionsWaterAreas;
         }
 
-        interestingWaterAreas.stream().parallel().forEach(w -> {
-            Geometry simple;
-            if (useSimpleAreaMap) {
-                simple = simpleWaterAreasMap.get(w);
-            } else {
-                simple = w.getGeom();
-            }
+        getCandidates(line).stream().parallel().forEach(w -> {
+            PreparedGeometry area = getArea(w, useSimpleAreaMap);
+            Geometry simple = area.getGeometry();
             DurationTimer debug2 = new DurationTimer();
             if (Debug.DEBUG) {
                 debug2.start();
             }
 
-            // early return if there is no intersection
-            boolean intersects = line.intersects(simple);
-            if (!intersects) return;
+            // early return if there is no intersection, the indexes of the prepared geometry reject most candidates
+            if (!area.intersects(line)) return;
 
-            Geometry intersection = line.intersection(simple);
+            // only the first and last part of the line inside the water area are used
+            double[] inside = CrossingKernel.firstAndLastInside(start, dest, area);
 
             if (Debug.DEBUG) {
                 debug2.stop();
@@ -91,33 +203,25 @@ public abstract class DirectLineEstimation implements DistanceEstimation {
                 GeoJsonWriter geoJsonWriter = new GeoJsonWriter();
                 geoJsonWriter.setEncodeCRS(false);
                 Debug.message(geoJsonWriter.write(simple));
-                Debug.message("- time for calculating intersection " + w.getName() + " " + intersection.getCoordinate() +
+                Debug.message("- time for calculating intersection " + w.getName() + " " + Arrays.toString(inside) +
                         ": " + time + " ns, " + time / 1000000 + " ms.");
             }
 
-            // only use first and last intersection with water area
-            List<LineString> lines = LineStringExtracter.getLines(intersection);
-            intersectionsWaterAreas.put(lines.get(0), w);
-            intersectionsWaterAreas.put(lines.get(lines.size() - 1), w);
+            if (inside == null) return;
+
+            intersectionsWaterAreas.put(toLine(start, dest, inside[0], inside[1]), w);
+            intersectionsWaterAreas.put(toLine(start, dest, inside[2], inside[3]), w);
         });
         return intersectionsWaterAreas;
     }
 
     protected Map<Point, WaterArea> getLineIntersections(DirectLine directLine) {
         LineString line = directLine.getLine();
+        Coordinate start = directLine.getStart();
+        Coordinate dest = directLine.getDest();
         Map<Point, WaterArea> intersectionsWaterLines = new ConcurrentHashMap<>();
 
-        List<WaterArea> interestingWaterLines = waterAreas;
-        if (waterAreaTree != null) {
-            Envelope lineEnvelope = line.getEnvelopeInternal();
-            Rectangle searchBounds = Geometries.rectangleGeographic(
-                    lineEnvelope.getMinX(), lineEnvelope.getMinY(),
-                    lineEnvelope.getMaxX(), lineEnvelope.getMaxY());
-            interestingWaterLines = waterAreaTree.search(searchBounds).toList().toBlocking().single()
-                    .stream().map(Entry::value).toList();
-        }
-
-        interestingWaterLines.stream().parallel().forEach(w -> {
+        getCandidates(line).stream().parallel().forEach(w -> {
             Geometry simple;
             simple = w.getGeom();
             DurationTimer debug2 = new DurationTimer();
@@ -125,14 +229,7 @@ public abstract class DirectLineEstimation implements DistanceEstimation {
                 debug2.start();
             }
 
-            // early return if there is no intersection
-            boolean intersects = line.intersects(simple);
-            if (!intersects) return;
-
-            Geometry intersection = line.intersection(simple);
-//            if (intersection.isEmpty()){
-//                return;
-//            }
+            double[] crossings = CrossingKernel.crossingParameters(start, dest, simple);
 
             if (Debug.DEBUG) {
                 debug2.stop();
@@ -141,12 +238,13 @@ public abstract class DirectLineEstimation implements DistanceEstimation {
                 GeoJsonWriter geoJsonWriter = new GeoJsonWriter();
                 geoJsonWriter.setEncodeCRS(false);
                 Debug.message(geoJsonWriter.write(simple));
-                Debug.message("- time for calculating intersection " + w.getName() + " " + intersection.getCoordinate() +
+                Debug.message("- time for calculating intersection " + w.getName() + " " + Arrays.toString(crossings) +
                         ": " + time + " ns, " + time / 1000000 + " ms.");
             }
 
             // only use first and last intersection with water area
-            List<Point> points = PointExtracter.getPoints(intersection);
+            List<Point> points = Arrays.stream(crossings)
+                    .mapToObj(t -> Factory.coordinateToPoint(CrossingKernel.pointAt(start, dest, t))).toList();
             if (points.size() % 2 != 0) {
                 intersectionsWaterLines.put(points.get(0), w);
                 if (points.size() > 1) {
@@ -169,6 +267,11 @@ public abstract class DirectLineEstimation implements DistanceEstimation {
         return intersectionsWaterLines;
     }
 
+    private static LineString toLine(Coordinate start, Coordinate dest, double from, double to) {
+        return Factory.FACTORY.createLineString(new Coordinate[]{CrossingKernel.pointAt(start, dest, from),
+                CrossingKernel.pointAt(start, dest, to)});
+    }
+
     protected List<Map.Entry<LineString, Double>> sortIntersectionsByDistance(
             DirectLine directLine, Map<LineString, WaterArea> intersectionsWaterAreasMap) {
         return sortIntersectionsByDistance(directLine, intersectionsWaterAreasMap, 1);
@@ -230,12 +333,6 @@ public abstract class DirectLineEstimation implements DistanceEstimation {
         return intersectionsWithDistanceList;
     }
 
-    protected DistanceEstimate calculateDistanceWithMetric(GeoLocation start, GeoLocation dest, DistanceEstimate savedDistance) {
-        var distance = metric.estimateDistance(start, dest);
-        lastDistanceCircuity = lastDistanceCircuity.add(distance.multiply(CIRCUITY_FACTOR_GERMANY));
-        return savedDistance.add(distance);
-    }
-
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -249,7 +346,9 @@ public abstract class DirectLineEstimation implements DistanceEstimation {
         return Objects.hash(simpleWaterAreasMap, waterAreas, metric);
     }
 
-    public DistanceEstimate getLastDistanceCircuity() {
-        return lastDistanceCircuity;
+    private record DirectLineKey(GeoLocation start, GeoLocation dest) {
+    }
+
+    private record IntersectionsKey(Object waterAreaTree, boolean useSimpleAreaMap, Coordinate start, Coordinate dest) {
     }
 }
@@ -1,20 +1,36 @@
 package de.uniwuerzburg.distanceestimation.estimation;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import de.uniwuerzburg.distanceestimation.models.ApproachResult;
 import de.uniwuerzburg.distanceestimation.models.DistanceEstimate;
 import de.uniwuerzburg.distanceestimation.models.GeoLocation;
 import org.locationtech.jts.geom.LineString;
 
+// Implementations must not keep any per-query state, so a single instance can be shared between threads
 public interface DistanceEstimation {
     float CIRCUITY_FACTOR_GERMANY = 1.32f;
 
     @JsonIgnore
         // This method should be used when measuring accuracy and time
-    DistanceEstimate estimateDistance(GeoLocation start, GeoLocation dest);
+    default DistanceEstimate estimateDistance(GeoLocation start, GeoLocation dest) {
+        return estimate(start, dest, false).distance();
+    }
+
+    @JsonIgnore
+        // Distance, circuity distance and (if requested) path of a single query
+    default ApproachResult estimate(GeoLocation start, GeoLocation dest, boolean includePath) {
+        return estimate(start, dest, includePath, QueryContext.NONE);
+    }
+
+    @JsonIgnore
+        // Same as above, intermediate results are shared with other approaches evaluated for the same query
+    ApproachResult estimate(GeoLocation start, GeoLocation dest, boolean includePath, QueryContext context);
 
     @JsonIgnore
         // This method should not be compared and is just for visualizing the data
-    LineString getPath(GeoLocation start, GeoLocation dest);
+    default LineString getPath(GeoLocation start, GeoLocation dest) {
+        return estimate(start, dest, true).path();
+    }
 
     ApproachType getApproachType();
 
@@ -2,14 +2,18 @@ package de.uniwuerzburg.distanceestimation.estimation;
 
 import de.uniwuerzburg.distanceestimation.estimation.clients.OsrmClient;
 import de.uniwuerzburg.distanceestimation.estimation.clients.PolylineDecoder;
+import de.uniwuerzburg.distanceestimation.models.ApproachResult;
 import de.uniwuerzburg.distanceestimation.models.Factory;
 import de.uniwuerzburg.distanceestimation.models.DistanceEstimate;
 import de.uniwuerzburg.distanceestimation.models.GeoLocation;
 import de.uniwuerzburg.distanceestimation.models.osrm.OsrmLocation;
 import de.uniwuerzburg.distanceestimation.models.osrm.OsrmRouteRequest;
+import de.uniwuerzburg.distanceestimation.models.osrm.OsrmRouteResponse;
+import de.uniwuerzburg.distanceestimation.models.osrm.OsrmRoutes;
 import org.locationtech.jts.geom.LineString;
 
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 
 public class OsrmEstimation implements DistanceEstimation {
@@ -20,23 +24,51 @@ public class OsrmEstimation implements DistanceEstimation {
     }
 
     @Override
-    public DistanceEstimate estimateDistance(GeoLocation start, GeoLocation dest) {
-        if (start.equals(dest)) return DistanceEstimate.zero;
-        
-        if (start.compareTo(dest) < 0) {
+    public ApproachResult estimate(GeoLocation start, GeoLocation dest, boolean includePath, QueryContext context) {
+        if (start.equals(dest)) {
+            return sameLocationResult(start, dest, includePath);
+        }
+        OsrmRouteRequest request = routeRequest(start, dest, includePath);
+        return toApproachResult(client.route(request), includePath);
+    }
+
+    // non-blocking variant of estimate, the result is completed by the HTTP client once OSRM responded
+    public CompletableFuture<ApproachResult> estimateAsync(GeoLocation start, GeoLocation dest, boolean includePath) {
+        if (start.equals(dest)) {
+            return CompletableFuture.completedFuture(sameLocationResult(start, dest, includePath));
+        }
+        OsrmRouteRequest request = routeRequest(start, dest, includePath);
+        return client.routeAsync(request).thenApply(response -> toApproachResult(response, includePath));
+    }
+
+    private static ApproachResult sameLocationResult(GeoLocation start, GeoLocation dest, boolean includePath) {
+        return new ApproachResult(DistanceEstimate.zero, null,
+                includePath ? Factory.FACTORY.createLineString(new GeoLocation[]{start, dest}) : null);
+    }
+
+    /*
+     * Distances are requested in canonical order, so both directions of a pair share one result. Paths are requested in
+     * the given order, as routes are not symmetric and the path has to lead from start to dest.
+     */
+    private static OsrmRouteRequest routeRequest(GeoLocation start, GeoLocation dest, boolean includePath) {
+        if (!includePath && start.compareTo(dest) < 0) {
             var tmp = start;
             start = dest;
             dest = tmp;
         }
-
-        double distanceMeters = client.route(new OsrmRouteRequest(new OsrmLocation(start), new OsrmLocation(dest))).routes()[0].distance();
-        return DistanceEstimate.byM(distanceMeters);
+        return new OsrmRouteRequest(new OsrmLocation(start), new OsrmLocation(dest));
     }
 
-    @Override
-    public LineString getPath(GeoLocation start, GeoLocation dest) {
-        GeoLocation[] locations = Arrays.stream(client.route(new OsrmRouteRequest(new OsrmLocation(start), new OsrmLocation(dest))).routes()[0].legs()[0].steps()).flatMap(step -> PolylineDecoder.decode(step.geometry(), 1e5).stream()).toArray(GeoLocation[]::new);
-        return Factory.FACTORY.createLineString(locations);
+    private static ApproachResult toApproachResult(OsrmRouteResponse response, boolean includePath) {
+        OsrmRoutes route = response.routes()[0];
+        LineString path = null;
+        if (includePath) {
+            // the route is requested with steps, hence the path is decoded from the same response
+            GeoLocation[] locations = Arrays.stream(route.legs()[0].steps())
+                    .flatMap(step -> PolylineDecoder.decode(step.geometry(), 1e5).stream()).toArray(GeoLocation[]::new);
+            path = Factory.FACTORY.createLineString(locations);
+        }
+        return new ApproachResult(DistanceEstimate.byM(route.distance()), null, path);
     }
 
     @Override
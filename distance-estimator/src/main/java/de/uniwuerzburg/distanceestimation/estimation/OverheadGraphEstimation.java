@@ -1,6 +1,7 @@
 package de.uniwuerzburg.distanceestimation.estimation;
 
 import com.harium.storage.kdtree.KDTree;
+import de.uniwuerzburg.distanceestimation.models.ApproachResult;
 import de.uniwuerzburg.distanceestimation.models.DirectLine;
 import de.uniwuerzburg.distanceestimation.models.DistanceEstimate;
 import de.uniwuerzburg.distanceestimation.models.GeoLocation;
@@ -11,16 +12,16 @@ import java.util.HashMap;
 
 public class OverheadGraphEstimation extends DirectLineEstimation {
 
-    private KDTree<GeoLocation> locationKDTree;
-    private HashMap<GeoLocation, HashMap<GeoLocation, Double>> circuityLookupMap;
-    private HashMap<GeoLocation, Double> circuityAverageLookupMap;
+    private final KDTree<GeoLocation> locationKDTree;
+    private final HashMap<GeoLocation, HashMap<GeoLocation, Double>> circuityLookupMap;
+    private final HashMap<GeoLocation, Double> circuityAverageLookupMap;
     private final int N_RANDOM_POINTS;
 
     public OverheadGraphEstimation(KDTree<GeoLocation> locationKDTree,
                                    HashMap<GeoLocation, HashMap<GeoLocation, Double>> circuityLookupMap,
                                    HashMap<GeoLocation, Double> circuityAverageLookupMap,
                                    int nPoints) {
-        super(null, null, null, new GreatCircleDistance());
+        super(null, null, null, null, new GreatCircleDistance());
         this.locationKDTree = locationKDTree;
         this.circuityLookupMap = circuityLookupMap;
         this.circuityAverageLookupMap = circuityAverageLookupMap;
@@ -28,7 +29,10 @@ public class OverheadGraphEstimation extends DirectLineEstimation {
     }
 
     @Override
-    public DistanceEstimate estimateDistance(GeoLocation start, GeoLocation dest) {
+    public ApproachResult estimate(GeoLocation start, GeoLocation dest, boolean includePath, QueryContext context) {
+        // the path is simply a straight line multiplied with the according circuity factor!
+        LineString path = includePath ? new DirectLine(start, dest).getLine() : null;
+
         // ensure same order of start dest
         if (start.compareTo(dest) < 0) {
             var tmp = start;
@@ -46,16 +50,9 @@ public class OverheadGraphEstimation extends DirectLineEstimation {
             circuityFactor = circuityLookupMap.get(closestPointStart).get(closestPointDest);
         }
 
-        double airlineDistance = metric.estimateDistance(start, dest).getMeters();
-
-        return DistanceEstimate.byM(airlineDistance * circuityFactor);
-    }
+        double airlineDistance = metric.estimateDistance(start, dest, context).getMeters();
 
-    @Override
-    public LineString getPath(GeoLocation start, GeoLocation dest) {
-        // the path is simply a straight line multiplied with the according circuity factor!
-        DirectLine line = new DirectLine(start, dest);
-        return line.getLine();
+        return new ApproachResult(DistanceEstimate.byM(airlineDistance * circuityFactor), null, path);
     }
 
     @Override
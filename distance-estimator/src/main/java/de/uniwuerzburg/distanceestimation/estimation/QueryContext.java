@@ -0,0 +1,59 @@
+package de.uniwuerzburg.distanceestimation.estimation;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Intermediate results shared by all approaches evaluated for the same query, e.g. direct line, intersections and
+// base distances. Keys have to identify the input completely and values must not be modified once computed.
+public class QueryContext {
+    // does not share anything, used for single approach queries
+    public static final QueryContext NONE = new QueryContext(false);
+
+    private final Map<Object, CompletableFuture<Object>> values;
+
+    public QueryContext() {
+        this(true);
+    }
+
+    private QueryContext(boolean shared) {
+        this.values = shared ? new ConcurrentHashMap<>() : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T computeIfAbsent(Object key, Supplier<T> supplier) {
+        if (values == null) {
+            return supplier.get();
+        }
+
+        // the value is computed outside the map, so other keys are not blocked and suppliers may use the context
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> existing = values.putIfAbsent(key, own);
+        if (existing != null) {
+            Object value = existing.join();
+            if (value instanceof Failure failure) {
+                failure.rethrow();
+            }
+            return (T) value;
+        }
+        try {
+            T value = supplier.get();
+            own.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            // the original exception instead of a CompletionException, so waiting approaches fail like the owner
+            own.complete(new Failure(e));
+            throw e;
+        }
+    }
+
+    private record Failure(Throwable exception) {
+        void rethrow() {
+            if (exception instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw (Error) exception;
+        }
+    }
+}
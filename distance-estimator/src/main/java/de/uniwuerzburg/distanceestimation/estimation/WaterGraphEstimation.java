@@ -1,81 +1,138 @@
 package de.uniwuerzburg.distanceestimation.estimation;
 
-import com.github.davidmoten.rtree.RTree;
+import de.uniwuerzburg.distanceestimation.graph.OverlayGraph;
+import de.uniwuerzburg.distanceestimation.graph.WaterBoundaryGraph;
 import de.uniwuerzburg.distanceestimation.models.*;
-import de.uniwuerzburg.distanceestimation.models.mapInfo.Edge;
 import de.uniwuerzburg.distanceestimation.models.mapInfo.WaterArea;
 import de.uniwuerzburg.distanceestimation.preprocessing.WaterGraphPreprocessing;
+import de.uniwuerzburg.distanceestimation.spatial.PackedRTree;
+import de.uniwuerzburg.distanceestimation.spatial.SegmentGrid;
+import de.uniwuerzburg.distanceestimation.spatial.WaterRaster;
 import de.uniwuerzburg.distanceestimation.util.Debug;
-import org.jgrapht.GraphPath;
-import org.jgrapht.alg.shortestpath.BidirectionalDijkstraShortestPath;
-import org.jgrapht.graph.SimpleWeightedGraph;
 import org.locationtech.jts.geom.*;
+import org.locationtech.jts.index.strtree.GeometryItemDistance;
+import org.locationtech.jts.index.strtree.ItemDistance;
+import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.io.geojson.GeoJsonWriter;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
 
 public class WaterGraphEstimation extends DirectLineEstimation {
+    private static final ItemDistance EDGE_DISTANCE = new GeometryItemDistance();
 
-    private final Map<WaterArea, SimpleWeightedGraph<GeoLocation, Edge>> waterGraphs;
-    private GraphPath<GeoLocation, Edge> lastGraphPath;
-    private final Map<WaterArea, Set<LineString>> waterGraphEdges;
+    private final WaterBoundaryGraph waterBoundaryGraph;
+    private final Map<WaterArea, STRtree> waterGraphEdgeIndex;
     private final boolean circuity;
     private final Map<WaterArea, Set<GeoLocation>> bridgesMap;
+    // A* instead of Dijkstra for the shortest path in the water graph
+    private final boolean goalDirected;
+    // prefilter of the direct lines, may be null
+    private final WaterRaster waterRaster;
 
-    public WaterGraphEstimation(Map<WaterArea, SimpleWeightedGraph<GeoLocation, Edge>> waterGraphs,
-                                Set<WaterArea> splitSimpleWaterAreas, Map<WaterArea, Set<LineString>> waterGraphEdges,
+    public WaterGraphEstimation(WaterBoundaryGraph waterBoundaryGraph,
+                                Set<WaterArea> splitSimpleWaterAreas, Map<WaterArea, STRtree> waterGraphEdgeIndex,
                                 AirlineDistance metric, boolean circuity, Map<WaterArea, Set<GeoLocation>> bridgesMap,
-                                RTree<WaterArea, com.github.davidmoten.rtree.geometry.Geometry> waterAreaTree) {
-        super(null, new ArrayList<>(splitSimpleWaterAreas), waterAreaTree, metric);
+                                PackedRTree<WaterArea> waterAreaTree, SegmentGrid segmentGrid,
+                                WaterRaster waterRaster, boolean goalDirected) {
+        super(null, new ArrayList<>(splitSimpleWaterAreas), waterAreaTree, segmentGrid, metric);
         this.circuity = circuity;
-        this.waterGraphs = waterGraphs;
-        this.waterGraphEdges = waterGraphEdges;
+        this.goalDirected = goalDirected;
+        this.waterRaster = waterRaster;
+        this.waterBoundaryGraph = waterBoundaryGraph;
+        this.waterGraphEdgeIndex = waterGraphEdgeIndex;
         this.bridgesMap = bridgesMap;
     }
 
     public WaterGraphEstimation(WaterGraphPreprocessing waterGraphPreprocessing, AirlineDistance metric, boolean circuity) {
+        this(waterGraphPreprocessing, metric, circuity, false);
+    }
+
+    public WaterGraphEstimation(WaterGraphPreprocessing waterGraphPreprocessing, AirlineDistance metric, boolean circuity,
+                                boolean goalDirected) {
         super(null, new ArrayList<>(waterGraphPreprocessing.getSimpleSplitWaterAreas()),
-                waterGraphPreprocessing.getWaterAreaTree(), metric);
+                waterGraphPreprocessing.getWaterAreaTree(), waterGraphPreprocessing.getSegmentGrid(), metric);
         this.circuity = circuity;
-        this.waterGraphs = waterGraphPreprocessing.getWaterGraphs();
-        this.waterGraphEdges = waterGraphPreprocessing.getWaterGraphEdges();
+        this.goalDirected = goalDirected;
+        this.waterRaster = waterGraphPreprocessing.getWaterRaster();
+        this.waterBoundaryGraph = waterGraphPreprocessing.getWaterBoundaryGraph();
+        this.waterGraphEdgeIndex = waterGraphPreprocessing.getWaterGraphEdgeIndex();
         this.bridgesMap = waterGraphPreprocessing.getNewBridges();
     }
 
     @Override
-    public DistanceEstimate estimateDistance(GeoLocation start, GeoLocation dest) {
-        Debug.startDebugTimer();
-
+    public ApproachResult estimate(GeoLocation start, GeoLocation dest, boolean includePath, QueryContext context) {
         if (start.compareTo(dest) < 0) {
             var tmp = start;
             start = dest;
             dest = tmp;
         }
 
-        DirectLine directLine = new DirectLine(start, dest);
-        Map<LineString, WaterArea> intersectionWaterAreasMap = getIntersections(directLine, false);
+        QueryEdges queryEdges = mayCrossWater(start, dest) ? getQueryEdges(start, dest, context) : null;
+        if (queryEdges == null) {
+            Debug.message("No Intersections with Water Areas. Calculating distance.");
+            DistanceEstimate distance = metric.estimateDistance(start, dest, context);
+            return toApproachResult(circuity ? distance.multiply(CIRCUITY_FACTOR_GERMANY) : distance,
+                    includePath ? Factory.FACTORY.createLineString() : null);
+        }
+
+        // the water graphs are not copied, the query only activates the intersected areas and adds a few edges. The
+        // number of overlays is bounded, hence one is only taken once the search is certain
+        try (OverlayGraph combined = OverlayGraph.forQuery(waterBoundaryGraph)) {
+            combined.addVertex(start);
+            combined.addVertex(dest);
+            for (int areaId : queryEdges.areaIds()) {
+                combined.activateArea(areaId);
+            }
+            for (QueryEdge edge : queryEdges.edges()) {
+                // parallel edges are fine, the shortest path search simply uses the cheapest one
+                combined.addEdge(edge.a(), edge.b(), edge.weight());
+            }
+
+            Debug.startDebugTimer();
+            double weight = combined.shortestPath(start, dest, goalDirected);
+            Debug.stopDebugTimer(goalDirected ? "Find shortest A* path" : "Find shortest Dijkstra path");
+
+            if (weight == Double.POSITIVE_INFINITY) {
+                throw new IllegalStateException("Destination can not be reached in the water graph");
+            }
+
+            if (Debug.DEBUG){
+                Debug.message("---");
+                Debug.message("Shortest path in Water Graph");
+                GeoJsonWriter geoJsonWriter = new GeoJsonWriter();
+                geoJsonWriter.setEncodeCRS(false);
+                Debug.message(geoJsonWriter.write(Factory.FACTORY.createLineString(combined.getLastPath().toArray(new Coordinate[0]))));
+                Debug.message("");
+            }
+
+            LineString path = includePath
+                    ? Factory.FACTORY.createLineString(combined.getLastPath().toArray(new Coordinate[0]))
+                    : null;
+            return toApproachResult(DistanceEstimate.byM(weight), path);
+        }
+    }
+
+    // areas and edges of the query from start to dest, null if the direct line does not intersect any water area
+    private QueryEdges getQueryEdges(GeoLocation start, GeoLocation dest, QueryContext context) {
+        Debug.startDebugTimer();
+        DirectLine directLine = getDirectLine(start, dest, context);
+        Map<LineString, WaterArea> intersectionWaterAreasMap = getIntersections(directLine, false, context);
         Debug.stopDebugTimer("Get all intersections of Start-Dest-Line with Water Areas");
         Debug.startDebugTimer();
         List<Map.Entry<LineString, Double>> intersectionsSortedByDistanceList = sortIntersectionsByDistance(directLine, intersectionWaterAreasMap);
         Debug.stopDebugTimer("Get Distance of Start to Intersections in sorted List");
 
         if (intersectionsSortedByDistanceList.isEmpty()) {
-            Debug.message("No Intersections with Water Areas. Calculating distance.");
-            lastGraphPath = null;
-            return calculateDistanceWithMetricNoSaved(start, dest);
+            return null;
         }
 
-        // initialize graph for calculating the distance in the end
-        SimpleWeightedGraph<GeoLocation, Edge> combined = new SimpleWeightedGraph<>(Edge.class);
         GeoLocation lastEnd = null;
-        combined.addVertex(start);
-        combined.addVertex(dest);
-        Set<WaterArea> alreadyProcessed = new HashSet<>();
-
-        Debug.startDebugTimer();
         WaterArea lastWater = null;
         boolean hasMultipleIntersections = false;
+        int[] areaIds = new int[intersectionsSortedByDistanceList.size()];
+        List<QueryEdge> edges = new ArrayList<>();
+
+        Debug.startDebugTimer();
         for (int i = 0; i < intersectionsSortedByDistanceList.size(); i++) {
             LineString intersection = intersectionsSortedByDistanceList.get(i).getKey();
             GeoLocation intersectionStart = new GeoLocation(intersection.getStartPoint().getCoordinate());
@@ -90,16 +147,8 @@ public class WaterGraphEstimation extends DirectLineEstimation {
                 Debug.message("Current Waterarea as GeoJSON: " + geoJsonWriter.write(w.getGeom()));
             }
 
-            // add all edges of current water area to the combined graph
-            SimpleWeightedGraph<GeoLocation, Edge> graph = waterGraphs.get(w);
-            if (!alreadyProcessed.contains(w)) {
-                for (Edge e : graph.edgeSet()) {
-                    var source = graph.getEdgeSource(e);
-                    var target = graph.getEdgeTarget(e);
-                    addEdgeWithWeight(combined, source, target, DistanceEstimate.byM(graph.getEdgeWeight(e)));
-                }
-                alreadyProcessed.add(w);
-            }
+            // make all edges of current water area part of the combined graph
+            areaIds[i] = w.getId();
 
             // make sure that lastEnd is initialized correctly, which essentially serves as the new starting point
             if (i == 0) {
@@ -107,7 +156,8 @@ public class WaterGraphEstimation extends DirectLineEstimation {
             }
 
             // returns [vertexNearestToStart, vertexNearestToEnd, vertexNearestToLastEnd]
-            GeoLocation[] closestVertices = findClosestVertices(w, intersectionStart, intersectionEnd, lastEnd);
+            GeoLocation[] closestVertices = findClosestVertices(waterGraphEdgeIndex.get(w), intersectionStart,
+                    intersectionEnd, lastEnd);
 
             // find nearest vertices of found intersection edges AND to the new starting point
             GeoLocation vertexNearestToStart = closestVertices[0];
@@ -119,25 +169,18 @@ public class WaterGraphEstimation extends DirectLineEstimation {
                 Debug.message("Graph vertices of " + w.getName() + " " + intersection + " are equal");
             }
             // add edge between new start and water area intersection
-            if (!combined.containsEdge(lastEnd, vertexNearestToStart) && !lastEnd.equals(vertexNearestToStart)) {
-                addEdgeWithWeight(combined, lastEnd, vertexNearestToStart);
-            }
+            addEdgeWithWeight(edges, lastEnd, vertexNearestToStart);
 
             // add edge between new start and closest water area point
-            if (!combined.containsEdge(lastEnd, vertexNearestToLastEnd) && !lastEnd.equals(vertexNearestToLastEnd)) {
-                addEdgeWithWeight(combined, lastEnd, vertexNearestToLastEnd);
-            }
+            addEdgeWithWeight(edges, lastEnd, vertexNearestToLastEnd);
 
             // Add Bridge Edges
             if (lastWater != null && lastWater.equals(w)) {
                 hasMultipleIntersections = true;
             } else {
-                if (!hasMultipleIntersections) {
-                    if (bridgesMap.containsKey(lastWater)) {
-                        var bridges = bridgesMap.get(lastWater);
-                        for (var b : bridges) {
-                            addEdgeWithWeight(combined, b, vertexNearestToStart);
-                        }
+                if (!hasMultipleIntersections && bridgesMap.containsKey(lastWater)) {
+                    for (GeoLocation b : bridgesMap.get(lastWater)) {
+                        addEdgeWithWeight(edges, b, vertexNearestToStart);
                     }
                 }
                 hasMultipleIntersections = false;
@@ -147,39 +190,25 @@ public class WaterGraphEstimation extends DirectLineEstimation {
             lastWater = w;
             // add edge between new start and destination, because there are no more intersections with water areas
             if (i == intersectionsSortedByDistanceList.size() - 1) {
-                addEdgeWithWeight(combined, lastEnd, dest);
+                addEdgeWithWeight(edges, lastEnd, dest);
 
                 // Add Bridge Edges to Destination
-                if (lastWater != null) {
-                    if (bridgesMap.containsKey(lastWater)) {
-                        var bridges = bridgesMap.get(lastWater);
-                        for (var b : bridges) {
-                            addEdgeWithWeight(combined, b, dest);
-                        }
+                if (bridgesMap.containsKey(lastWater)) {
+                    for (GeoLocation b : bridgesMap.get(lastWater)) {
+                        addEdgeWithWeight(edges, b, dest);
                     }
                 }
             }
         }
 
         Debug.stopDebugTimer("Insert extra Edges between Graphs");
-        Debug.startDebugTimer();
-        lastGraphPath = BidirectionalDijkstraShortestPath.findPathBetween(combined, start, dest);
-        Debug.stopDebugTimer("Find shortest Dijkstra path");
-
-        // first benchmarks have shown that this actually takes more time.
-        // Maybe A* requires graphs of a certain size to leverage its performance
-//        Debug.startDebugTimer();
-//        lastGraphPath = (new BidirectionalAStarShortestPath<GeoLocation, Edge>(combined, new GreatCircleDistance())).getPath(start, dest);
-//        Debug.stopDebugTimer("Find shortest A* path");
-
-        if (Debug.DEBUG){
-            Debug.message("---");
-            Debug.message("Constructed Water Graph");
-            Debug.message(getGraphAsGeoJSON(combined));
-            Debug.message("");
-        }
+        // all edges of the intersected water areas become part of the combined graph
+        return new QueryEdges(areaIds, edges);
+    }
 
-        return DistanceEstimate.byM(lastGraphPath.getWeight());
+    private ApproachResult toApproachResult(DistanceEstimate distance, LineString path) {
+        // in circuity mode all weights already include the circuity factor
+        return new ApproachResult(distance, circuity ? distance : null, path);
     }
 
 
@@ -192,69 +221,20 @@ public class WaterGraphEstimation extends DirectLineEstimation {
         }
     }
 
-    private GeoLocation[] findClosestVertices(WaterArea waterArea, GeoLocation intersectionStart,
+    private GeoLocation[] findClosestVertices(STRtree edgeIndex, GeoLocation intersectionStart,
                                               GeoLocation intersectionEnd, GeoLocation lastEnd) {
-        AtomicReference<LineString> nearestToStart = new AtomicReference<>();
-        AtomicReference<LineString> nearestToEnd = new AtomicReference<>();
-        AtomicReference<LineString> nearestToLastEnd = new AtomicReference<>();
-
-        final double[] minDistanceToStart = { Double.MAX_VALUE };
-        final double[] minDistanceToEnd = { Double.MAX_VALUE };
-        final double[] minDistanceToLastEnd = { Double.MAX_VALUE };
-        Geometry intersectionStartGeometry = Factory.coordinateToPoint(intersectionStart);
-        Geometry intersectionEndGeometry = Factory.coordinateToPoint(intersectionEnd);
-        Geometry lastEndGeometry = Factory.coordinateToPoint(lastEnd);
-        final Object[] lock = { new Object(), new Object(), new Object() };
-
-        var stream = waterGraphEdges.get(waterArea).stream();
-
-        // only make use of parallelization if water graph is big enough
-        if (waterGraphEdges.size() > 3000) {
-            stream = stream.parallel();
-        }
-
-        stream.forEach(edge -> {
-            double distanceToStart = edge.distance(intersectionStartGeometry);
-            double distanceToEnd = edge.distance(intersectionEndGeometry);
-            double distanceToLastEnd = edge.distance(lastEndGeometry);
-
-            // idea here is to only acquire the lock if there is an actual chance of a lower value. We need to check the
-            // condition again because, in theory, the value could have been set in the meantime by another thread!
-            if (distanceToStart < minDistanceToStart[0]) {
-                synchronized (lock[0]){
-                    if (distanceToStart < minDistanceToStart[0]) {
-                        minDistanceToStart[0] = distanceToStart;
-                        nearestToStart.set(edge);
-                    }
-                }
-            }
-
-            if (distanceToEnd < minDistanceToEnd[0]) {
-                synchronized (lock[1]){
-                    if (distanceToEnd < minDistanceToEnd[0]) {
-                        minDistanceToEnd[0] = distanceToEnd;
-                        nearestToEnd.set(edge);
-                    }
-                }
-            }
-
-            if (distanceToLastEnd < minDistanceToLastEnd[0]) {
-                synchronized (lock[2]){
-                    if (distanceToLastEnd < minDistanceToLastEnd[0]) {
-                        minDistanceToLastEnd[0] = distanceToLastEnd;
-                        nearestToLastEnd.set(edge);
-                    }
-                }
-            }
-        });
-
-        GeoLocation vertexNearestToStart = new GeoLocation(getNearestCoordinateOfEdge(nearestToStart.get(), intersectionStart));
-        GeoLocation vertexNearestToEnd = new GeoLocation(getNearestCoordinateOfEdge(nearestToEnd.get(), intersectionEnd));
-        GeoLocation vertexNearestToLastEnd = new GeoLocation(getNearestCoordinateOfEdge(nearestToLastEnd.get(), lastEnd));
+        GeoLocation vertexNearestToStart = getNearestCoordinateOfEdge(nearestEdge(edgeIndex, intersectionStart), intersectionStart);
+        GeoLocation vertexNearestToEnd = getNearestCoordinateOfEdge(nearestEdge(edgeIndex, intersectionEnd), intersectionEnd);
+        GeoLocation vertexNearestToLastEnd = getNearestCoordinateOfEdge(nearestEdge(edgeIndex, lastEnd), lastEnd);
 
         return new GeoLocation[]{vertexNearestToStart, vertexNearestToEnd, vertexNearestToLastEnd};
     }
 
+    private LineString nearestEdge(STRtree edgeIndex, GeoLocation location) {
+        Point point = Factory.coordinateToPoint(location);
+        return (LineString) edgeIndex.nearestNeighbour(point.getEnvelopeInternal(), point, EDGE_DISTANCE);
+    }
+
 
     public boolean crossesWater(GeoLocation start, GeoLocation dest){
         if (start.compareTo(dest) < 0) {
@@ -263,67 +243,35 @@ public class WaterGraphEstimation extends DirectLineEstimation {
             dest = tmp;
         }
 
-        DirectLine directLine = new DirectLine(start, dest);
-        Map<LineString, WaterArea> intersectionWaterAreasMap = getIntersections(directLine, false);
-
-        return !intersectionWaterAreasMap.isEmpty();
+        WaterRaster.Coverage coverage = waterRaster == null
+                ? WaterRaster.Coverage.BOUNDARY : waterRaster.coverage(start, dest);
+        return switch (coverage) {
+            case NO_WATER -> false;
+            case ALL_WATER -> true;
+            case BOUNDARY -> crossesWater(new DirectLine(start, dest), false);
+        };
     }
 
-    private void addEdgeWithWeight(SimpleWeightedGraph<GeoLocation, Edge> combined, GeoLocation a, GeoLocation b) {
-        var weight = calculateDistanceWithMetricNoSaved(a, b);
-        addEdgeWithWeight(combined, a, b, weight);
+    // false if the raster shows that the direct line does not touch any water area
+    private boolean mayCrossWater(GeoLocation start, GeoLocation dest) {
+        return waterRaster == null || waterRaster.coverage(start, dest) != WaterRaster.Coverage.NO_WATER;
     }
 
-    private void addEdgeWithWeight(SimpleWeightedGraph<GeoLocation, Edge> combined, GeoLocation a, GeoLocation b, DistanceEstimate weight) {
-        combined.addVertex(a);
-        combined.addVertex(b);
-        if (!a.equals(b) && !combined.containsEdge(a, b) && !combined.containsEdge(b, a)) {
-            try {
-                combined.addEdge(a, b);
-            } catch (Exception e) {
-                Debug.message(a + " " + b);
-                Debug.message("");
-            }
-
-            combined.setEdgeWeight(a, b, weight.getMeters());
+    private void addEdgeWithWeight(List<QueryEdge> edges, GeoLocation a, GeoLocation b) {
+        if (a.equals(b)) {
+            return;
         }
+        edges.add(new QueryEdge(a, b, calculateDistanceWithMetricNoSaved(a, b).getMeters()));
     }
 
     private DistanceEstimate calculateDistanceWithMetricNoSaved(GeoLocation start, GeoLocation dest) {
-        lastDistanceCircuity = DistanceEstimate.zero;
-        // sets lastDistanceCircuity accordingly
-        var distance = super.calculateDistanceWithMetric(start, dest, DistanceEstimate.zero);
+        var distance = metric.estimateDistance(start, dest);
         if (circuity) {
-            distance = lastDistanceCircuity;
+            distance = distance.multiply(CIRCUITY_FACTOR_GERMANY);
         }
         return distance;
     }
 
-    public static String getGraphAsGeoJSON(SimpleWeightedGraph<GeoLocation, Edge> graph) {
-        List<LineString> lines = new ArrayList<>();
-        if (graph == null) {
-            return "";
-        }
-        for (Edge edge : graph.edgeSet()) {
-            Coordinate[] arr = new Coordinate[2];
-            arr[0] = graph.getEdgeSource(edge);
-            arr[1] = graph.getEdgeTarget(edge);
-            lines.add(Factory.FACTORY.createLineString(arr));
-        }
-        MultiLineString multiLine = Factory.FACTORY.createMultiLineString(lines.toArray(new LineString[0]));
-        GeoJsonWriter geoJsonWriter = new GeoJsonWriter();
-        geoJsonWriter.setEncodeCRS(false);
-        return geoJsonWriter.write(multiLine);
-    }
-
-    @Override
-    public LineString getPath(GeoLocation start, GeoLocation dest) {
-        if (lastGraphPath == null) {
-            return Factory.FACTORY.createLineString();
-        }
-        return Factory.FACTORY.createLineString(lastGraphPath.getVertexList().toArray(new Coordinate[0]));
-    }
-
     @Override
     public ApproachType getApproachType() {
         if (circuity) {
@@ -336,8 +284,8 @@ public class WaterGraphEstimation extends DirectLineEstimation {
 
     @Override
     public DistanceEstimation copyApproach() {
-        return new WaterGraphEstimation(waterGraphs, new HashSet<>(waterAreas), waterGraphEdges, metric, circuity,
-                bridgesMap, waterAreaTree);
+        return new WaterGraphEstimation(waterBoundaryGraph, new HashSet<>(waterAreas), waterGraphEdgeIndex, metric, circuity,
+                bridgesMap, waterAreaTree, segmentGrid, waterRaster, goalDirected);
     }
 
     @Override
@@ -346,11 +294,17 @@ public class WaterGraphEstimation extends DirectLineEstimation {
         if (o == null || getClass() != o.getClass()) return false;
         if (!super.equals(o)) return false;
         WaterGraphEstimation that = (WaterGraphEstimation) o;
-        return circuity == that.circuity && Objects.equals(waterGraphs, that.waterGraphs) && Objects.equals(waterGraphEdges, that.waterGraphEdges) && Objects.equals(bridgesMap, that.bridgesMap);
+        return circuity == that.circuity && goalDirected == that.goalDirected && Objects.equals(waterBoundaryGraph, that.waterBoundaryGraph) && Objects.equals(waterGraphEdgeIndex, that.waterGraphEdgeIndex) && Objects.equals(bridgesMap, that.bridgesMap);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(super.hashCode(), waterGraphs, waterGraphEdges, circuity, bridgesMap);
+        return Objects.hash(super.hashCode(), waterBoundaryGraph, waterGraphEdgeIndex, circuity, bridgesMap, goalDirected);
+    }
+
+    private record QueryEdge(GeoLocation a, GeoLocation b, double weight) {
+    }
+
+    private record QueryEdges(int[] areaIds, List<QueryEdge> edges) {
     }
 }
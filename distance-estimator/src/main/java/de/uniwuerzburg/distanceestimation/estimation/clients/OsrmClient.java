@@ -1,35 +1,94 @@
 package de.uniwuerzburg.distanceestimation.estimation.clients;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import de.uniwuerzburg.distanceestimation.models.osrm.OsrmNearestRequest;
 import de.uniwuerzburg.distanceestimation.models.osrm.OsrmNearestResponse;
 import de.uniwuerzburg.distanceestimation.models.osrm.OsrmRouteRequest;
 import de.uniwuerzburg.distanceestimation.models.osrm.OsrmRouteResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.util.UriBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
 
 public class OsrmClient {
+    private static final String BASE_URL = "http://127.0.0.1:5000";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     private final RestClient restClient;
+    private final HttpClient httpClient;
 
 
     public OsrmClient() {
-        this.restClient = RestClient.create("http://127.0.0.1:5000");
+        this(false);
+    }
+
+    public OsrmClient(boolean virtualThreads) {
+        HttpClient.Builder httpClientBuilder = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1);
+        if (virtualThreads) {
+            // the JDK client only parks while waiting for OSRM and does not pin the calling virtual thread
+            httpClientBuilder.executor(Executors.newVirtualThreadPerTaskExecutor());
+        }
+        this.httpClient = httpClientBuilder.build();
+
+        if (virtualThreads) {
+            this.restClient = RestClient.builder()
+                    .baseUrl(BASE_URL)
+                    .requestFactory(new JdkClientHttpRequestFactory(httpClient))
+                    .build();
+        } else {
+            this.restClient = RestClient.create(BASE_URL);
+        }
     }
 
     public OsrmRouteResponse route(OsrmRouteRequest request) {
         try {
             return restClient.get()
-                    .uri(uribuilder -> uribuilder.path("/route/v1/driving/" + request.start.getLocationString() + ";" + request.dest.getLocationString())
-                            .queryParam("steps", true)
-                            .queryParam("alternatives", false)
-                            .queryParam("overview", false)
-                            .queryParam("exclude", "ferry")
-                            .build())
+                    .uri(uribuilder -> routeUri(uribuilder, request))
                     .retrieve().body(OsrmRouteResponse.class);
         } catch (HttpClientErrorException e) {
             return null;
         }
     }
 
+    // same as route, but does not block the calling thread while waiting for OSRM
+    public CompletableFuture<OsrmRouteResponse> routeAsync(OsrmRouteRequest request) {
+        HttpRequest httpRequest = HttpRequest.newBuilder(routeUri(UriComponentsBuilder.fromHttpUrl(BASE_URL), request))
+                .GET().build();
+        return httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray()).thenApply(response -> {
+            if (response.statusCode() >= 400 && response.statusCode() < 500) {
+                return null;
+            }
+            if (response.statusCode() >= 500) {
+                throw new IllegalStateException("OSRM responded with status " + response.statusCode());
+            }
+            try {
+                return OBJECT_MAPPER.readValue(response.body(), OsrmRouteResponse.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private URI routeUri(UriBuilder uribuilder, OsrmRouteRequest request) {
+        return uribuilder.path("/route/v1/driving/" + request.start.getLocationString() + ";" + request.dest.getLocationString())
+                .queryParam("steps", true)
+                .queryParam("alternatives", false)
+                .queryParam("overview", false)
+                .queryParam("exclude", "ferry")
+                .build();
+    }
+
     public OsrmNearestResponse nearest(OsrmNearestRequest request) {
         return restClient.get()
                 .uri(uribuilder -> uribuilder.path("/nearest/v1/driving/" + request.start.getLocationString())
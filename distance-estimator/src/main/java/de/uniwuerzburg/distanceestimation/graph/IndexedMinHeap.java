@@ -0,0 +1,125 @@
+package de.uniwuerzburg.distanceestimation.graph;
+
+import java.util.Arrays;
+
+/*
+ * Binary min-heap of int vertices with double keys and decrease-key. The position of each vertex is kept in an array,
+ * which is only reset for the vertices that were inserted, so clearing is proportional to the heap usage.
+ */
+final class IndexedMinHeap {
+    private int[] vertices;
+    private double[] keys;
+    // position of a vertex in the heap, -1 if it is not (or no longer) contained
+    private int[] positions;
+    private int size;
+    private int[] inserted;
+    private int insertedCount;
+
+    IndexedMinHeap(int capacity) {
+        this.vertices = new int[64];
+        this.keys = new double[64];
+        this.positions = new int[capacity];
+        Arrays.fill(positions, -1);
+        this.inserted = new int[64];
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > positions.length) {
+            int oldCapacity = positions.length;
+            positions = Arrays.copyOf(positions, capacity);
+            Arrays.fill(positions, oldCapacity, capacity, -1);
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(int vertex) {
+        return positions[vertex] >= 0;
+    }
+
+    void insert(int vertex, double key) {
+        if (size == vertices.length) {
+            vertices = Arrays.copyOf(vertices, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        if (insertedCount == inserted.length) {
+            inserted = Arrays.copyOf(inserted, insertedCount * 2);
+        }
+        inserted[insertedCount++] = vertex;
+        vertices[size] = vertex;
+        keys[size] = key;
+        positions[vertex] = size;
+        siftUp(size++);
+    }
+
+    void decreaseKey(int vertex, double key) {
+        int position = positions[vertex];
+        keys[position] = key;
+        siftUp(position);
+    }
+
+    int poll() {
+        int min = vertices[0];
+        positions[min] = -1;
+        size--;
+        if (size > 0) {
+            vertices[0] = vertices[size];
+            keys[0] = keys[size];
+            positions[vertices[0]] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    void clear() {
+        for (int i = 0; i < insertedCount; i++) {
+            positions[inserted[i]] = -1;
+        }
+        insertedCount = 0;
+        size = 0;
+    }
+
+    private void siftUp(int position) {
+        int vertex = vertices[position];
+        double key = keys[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            move(parent, position);
+            position = parent;
+        }
+        vertices[position] = vertex;
+        keys[position] = key;
+        positions[vertex] = position;
+    }
+
+    private void siftDown(int position) {
+        int vertex = vertices[position];
+        double key = keys[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            move(child, position);
+            position = child;
+        }
+        vertices[position] = vertex;
+        keys[position] = key;
+        positions[vertex] = position;
+    }
+
+    private void move(int from, int to) {
+        vertices[to] = vertices[from];
+        keys[to] = keys[from];
+        positions[vertices[to]] = to;
+    }
+}
@@ -0,0 +1,489 @@
+package de.uniwuerzburg.distanceestimation.graph;
+
+import de.uniwuerzburg.distanceestimation.models.GeoLocation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+
+/*
+ * Graph of a single query: the rings of the activated water areas of the static WaterBoundaryGraph plus a few
+ * temporary edges and vertices (start, destination, connections between areas and bridges). The static graph is
+ * never copied or modified.
+ *
+ * The search does not visit every vertex of the active rings. Rings the query does not attach to are searched through
+ * the static core edges between their shared vertices. The rings the query attaches to are split: their key
+ * positions (vertices with temporary edges, start, destination and shared vertices) are connected by temporary arcs,
+ * consecutive key positions by an arc whose length is the difference of the ring's prefix sums. All other ring
+ * vertices have exactly two neighbours, hence no shortest path can leave the ring there. Arcs and core edges are
+ * expanded to ring vertices again in getLastPath.
+ *
+ * The search is either Dijkstra or A*. The A* lower bound is the straight-line coordinate distance to the destination,
+ * scaled by the lowest weight per distance of all edges of the query, hence it is admissible and consistent for any
+ * metric the edge weights were computed with.
+ *
+ * Instances are taken from a bounded pool of the static graph (see forQuery) and returned on close, independent of the
+ * thread, so queries on short-lived virtual threads reuse them as well. All per-vertex arrays are only reset at the
+ * vertices touched by the previous query. Hence, a query does not allocate anything proportional to the size of the
+ * water graph.
+ */
+public final class OverlayGraph implements AutoCloseable {
+    private static final int INITIAL_TEMP_CAPACITY = 64;
+
+    private final WaterBoundaryGraph base;
+    private final int baseVertices;
+
+    private final boolean[] activeAreas;
+    private int[] activatedAreas = new int[16];
+    private int activatedAreaCount;
+
+    private final Map<GeoLocation, Integer> tempVertexIds = new HashMap<>();
+    private GeoLocation[] tempLocations = new GeoLocation[INITIAL_TEMP_CAPACITY];
+    private int tempVertexCount;
+
+    // temporary edges as linked lists per vertex
+    private int[] tempHead;
+    private int[] tempHeadVertices = new int[INITIAL_TEMP_CAPACITY];
+    private int tempHeadCount;
+    private int[] tempEdgeTarget = new int[INITIAL_TEMP_CAPACITY];
+    private double[] tempEdgeWeight = new double[INITIAL_TEMP_CAPACITY];
+    private int[] tempEdgeNext = new int[INITIAL_TEMP_CAPACITY];
+    private int[] tempEdgeSource = new int[INITIAL_TEMP_CAPACITY];
+    // ring arcs only: ring, first and last position and direction (+1 or -1), the ring is -1 for plain edges
+    private int[] tempEdgeRing = new int[INITIAL_TEMP_CAPACITY];
+    private int[] tempEdgeFrom = new int[INITIAL_TEMP_CAPACITY];
+    private int[] tempEdgeTo = new int[INITIAL_TEMP_CAPACITY];
+    private int[] tempEdgeStep = new int[INITIAL_TEMP_CAPACITY];
+    private int tempEdgeCount;
+    private double tempWeightPerDistance = Double.POSITIVE_INFINITY;
+
+    // ring arcs are the edges from ringArcStart on, -1 if they are not built
+    private int ringArcStart = -1;
+    private long[] keyPositions = new long[256];
+    private int keyPositionCount;
+    // rings split by ring arcs, their core edges are ignored
+    private final boolean[] splitRings;
+    private int[] splitRingList = new int[16];
+    private int splitRingCount;
+
+    // search state, only valid at the vertices in touched. Predecessor edges are temporary edges (>= 0), core edges
+    // (encoded as -2 - edge) or -1 at the source
+    private double[] distances;
+    private double[] potentials;
+    private int[] predecessorEdges;
+    private int[] touched = new int[1024];
+    private int touchedCount;
+    private int lastTarget = -1;
+    private double potentialScale;
+    private GeoLocation potentialTarget;
+    private final IndexedMinHeap heap;
+    private boolean inUse;
+
+    private OverlayGraph(WaterBoundaryGraph base) {
+        this.base = base;
+        this.baseVertices = base.getVertexCount();
+        this.activeAreas = new boolean[base.getAreaCount()];
+        this.splitRings = new boolean[base.getRingCount()];
+        int capacity = baseVertices + INITIAL_TEMP_CAPACITY;
+        this.tempHead = new int[capacity];
+        Arrays.fill(tempHead, -1);
+        this.distances = new double[capacity];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        this.potentials = new double[capacity];
+        this.predecessorEdges = new int[capacity];
+        Arrays.fill(predecessorEdges, -1);
+        this.heap = new IndexedMinHeap(capacity);
+    }
+
+    // empty overlay of the static graph, it has to be closed after the query and must not be used afterwards
+    public static OverlayGraph forQuery(WaterBoundaryGraph base) {
+        Pool pool = base.getOverlayPool();
+        pool.permits.acquireUninterruptibly();
+        OverlayGraph overlay = pool.idle.pollFirst();
+        if (overlay == null) {
+            try {
+                overlay = new OverlayGraph(base);
+            } catch (RuntimeException | Error e) {
+                pool.permits.release();
+                throw e;
+            }
+        }
+        overlay.clear();
+        overlay.inUse = true;
+        return overlay;
+    }
+
+    @Override
+    public void close() {
+        if (!inUse) {
+            return;
+        }
+        inUse = false;
+        Pool pool = base.getOverlayPool();
+        pool.idle.push(this);
+        pool.permits.release();
+    }
+
+    // idle overlays of one static graph, at most maxOverlays exist and further queries wait until one is closed
+    static final class Pool {
+        private final Semaphore permits;
+        private final ConcurrentLinkedDeque<OverlayGraph> idle = new ConcurrentLinkedDeque<>();
+
+        Pool(int maxOverlays) {
+            this.permits = new Semaphore(maxOverlays);
+        }
+    }
+
+    private void clear() {
+        resetSearch();
+        removeRingArcs();
+        for (int i = 0; i < activatedAreaCount; i++) {
+            activeAreas[activatedAreas[i]] = false;
+        }
+        activatedAreaCount = 0;
+        for (int i = 0; i < tempHeadCount; i++) {
+            tempHead[tempHeadVertices[i]] = -1;
+        }
+        tempHeadCount = 0;
+        tempEdgeCount = 0;
+        tempWeightPerDistance = Double.POSITIVE_INFINITY;
+        tempVertexIds.clear();
+        Arrays.fill(tempLocations, 0, tempVertexCount, null);
+        tempVertexCount = 0;
+    }
+
+    public void activateArea(int areaId) {
+        if (activeAreas[areaId]) {
+            return;
+        }
+        removeRingArcs();
+        activeAreas[areaId] = true;
+        if (activatedAreaCount == activatedAreas.length) {
+            activatedAreas = Arrays.copyOf(activatedAreas, activatedAreaCount * 2);
+        }
+        activatedAreas[activatedAreaCount++] = areaId;
+    }
+
+    public int addVertex(GeoLocation location) {
+        int id = base.getVertexId(location);
+        if (id >= 0) {
+            return id;
+        }
+        Integer tempId = tempVertexIds.get(location);
+        if (tempId != null) {
+            return tempId;
+        }
+        if (tempVertexCount == tempLocations.length) {
+            growTempVertices();
+        }
+        id = baseVertices + tempVertexCount;
+        tempLocations[tempVertexCount++] = location;
+        tempVertexIds.put(location, id);
+        return id;
+    }
+
+    public void addEdge(GeoLocation a, GeoLocation b, double weight) {
+        int u = addVertex(a);
+        int v = addVertex(b);
+        if (u == v) {
+            return;
+        }
+        removeRingArcs();
+        double distance = a.distance(b);
+        if (distance > 0) {
+            tempWeightPerDistance = Math.min(tempWeightPerDistance, weight / distance);
+        }
+        addTempEdge(u, v, weight, -1, 0, 0, 0);
+        addTempEdge(v, u, weight, -1, 0, 0, 0);
+    }
+
+    public GeoLocation getLocation(int vertex) {
+        if (vertex < baseVertices) {
+            return base.getLocation(vertex);
+        }
+        return tempLocations[vertex - baseVertices];
+    }
+
+    // Dijkstra between the two locations, infinity if dest can not be reached
+    public double shortestPath(GeoLocation start, GeoLocation dest) {
+        return shortestPath(start, dest, false);
+    }
+
+    // Dijkstra or A* between the two locations, infinity if dest can not be reached
+    public double shortestPath(GeoLocation start, GeoLocation dest, boolean goalDirected) {
+        int source = addVertex(start);
+        int target = addVertex(dest);
+        resetSearch();
+        removeRingArcs();
+        buildRingArcs(source, target);
+        lastTarget = target;
+        potentialScale = goalDirected ? getPotentialScale() : 0;
+        potentialTarget = dest;
+
+        touch(source, 0, -1);
+        heap.insert(source, potentials[source]);
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            if (u == target) {
+                break;
+            }
+            expand(u);
+        }
+        return distances[target];
+    }
+
+    // vertices of the path found by the last call of shortestPath, from start to dest
+    public List<GeoLocation> getLastPath() {
+        List<GeoLocation> vertices = new ArrayList<>();
+        if (lastTarget == -1 || distances[lastTarget] == Double.POSITIVE_INFINITY) {
+            return vertices;
+        }
+        int v = lastTarget;
+        for (int e = predecessorEdges[v]; e != -1; e = predecessorEdges[v]) {
+            int ring, from, to, step;
+            if (e >= 0) {
+                ring = tempEdgeRing[e];
+                from = tempEdgeFrom[e];
+                to = tempEdgeTo[e];
+                step = tempEdgeStep[e];
+            } else {
+                int core = -2 - e;
+                ring = base.coreRing(core);
+                from = base.coreFrom(core);
+                to = base.coreTo(core);
+                step = base.coreStep(core);
+            }
+            if (ring == -1) {
+                vertices.add(getLocation(v));
+                v = tempEdgeSource[e];
+            } else {
+                // ring vertices of the arc from its last to its second position
+                int length = base.ringLength(ring);
+                for (int p = to; p != from; p = Math.floorMod(p - step, length)) {
+                    vertices.add(base.getLocation(base.ringVertex(ring, p)));
+                }
+                v = base.ringVertex(ring, from);
+            }
+        }
+        vertices.add(getLocation(v));
+        return vertices.reversed();
+    }
+
+    private void expand(int u) {
+        double distance = distances[u];
+        if (u < baseVertices) {
+            for (int e = base.firstCoreEdge(u); e < base.lastCoreEdge(u); e++) {
+                int ring = base.coreRing(e);
+                if (activeAreas[base.ringArea(ring)] && !splitRings[ring]) {
+                    relax(-2 - e, base.coreTarget(e), distance + base.coreWeight(e));
+                }
+            }
+        }
+        for (int e = tempHead[u]; e != -1; e = tempEdgeNext[e]) {
+            relax(e, tempEdgeTarget[e], distance + tempEdgeWeight[e]);
+        }
+    }
+
+    // splits the active rings the query attaches to, consecutive key positions are connected by arcs
+    private void buildRingArcs(int source, int target) {
+        keyPositionCount = 0;
+        for (int i = 0; i < tempHeadCount; i++) {
+            addKeyOccurrences(tempHeadVertices[i]);
+        }
+        addKeyOccurrences(source);
+        addKeyOccurrences(target);
+        int queryKeyPositionCount = keyPositionCount;
+        for (int i = 0; i < queryKeyPositionCount; i++) {
+            int ring = (int) (keyPositions[i] >>> 32);
+            if (!splitRings[ring]) {
+                splitRings[ring] = true;
+                if (splitRingCount == splitRingList.length) {
+                    splitRingList = Arrays.copyOf(splitRingList, splitRingCount * 2);
+                }
+                splitRingList[splitRingCount++] = ring;
+                for (int j = base.firstJunction(ring); j < base.lastJunction(ring); j++) {
+                    addKeyPosition(ring, base.junctionPosition(j));
+                }
+            }
+        }
+
+        ringArcStart = tempEdgeCount;
+        Arrays.sort(keyPositions, 0, keyPositionCount);
+        int first = 0;
+        while (first < keyPositionCount) {
+            int ring = (int) (keyPositions[first] >>> 32);
+            int last = first;
+            while (last + 1 < keyPositionCount && (int) (keyPositions[last + 1] >>> 32) == ring) {
+                last++;
+            }
+            addRingArcs(ring, first, last);
+            first = last + 1;
+        }
+    }
+
+    private void addKeyOccurrences(int vertex) {
+        if (vertex >= baseVertices) {
+            return;
+        }
+        for (int o = base.firstOccurrence(vertex); o < base.lastOccurrence(vertex); o++) {
+            int ring = base.occurrenceRing(o);
+            if (activeAreas[base.ringArea(ring)]) {
+                addKeyPosition(ring, base.occurrencePosition(o));
+            }
+        }
+    }
+
+    private void addKeyPosition(int ring, int position) {
+        if (keyPositionCount == keyPositions.length) {
+            keyPositions = Arrays.copyOf(keyPositions, keyPositionCount * 2);
+        }
+        keyPositions[keyPositionCount++] = ((long) ring << 32) | position;
+    }
+
+    // sorted key positions of the ring are keyPositions[first..last], duplicates included
+    private void addRingArcs(int ring, int first, int last) {
+        int length = base.ringLength(ring);
+        double total = base.ringPrefix(ring, length);
+        int firstPosition = (int) keyPositions[first];
+        int previous = firstPosition;
+        for (int i = first + 1; i <= last; i++) {
+            int position = (int) keyPositions[i];
+            if (position != previous) {
+                addRingArc(ring, previous, position,
+                        base.ringPrefix(ring, position) - base.ringPrefix(ring, previous));
+                previous = position;
+            }
+        }
+        if (previous != firstPosition) {
+            // closing arc across position 0
+            addRingArc(ring, previous, firstPosition,
+                    total - base.ringPrefix(ring, previous) + base.ringPrefix(ring, firstPosition));
+        }
+    }
+
+    private void addRingArc(int ring, int from, int to, double weight) {
+        int u = base.ringVertex(ring, from);
+        int v = base.ringVertex(ring, to);
+        if (u == v) {
+            return;
+        }
+        addTempEdge(u, v, weight, ring, from, to, 1);
+        addTempEdge(v, u, weight, ring, to, from, -1);
+    }
+
+    // ring arcs depend on the active areas and temporary edges, they are rebuilt by the next search
+    private void removeRingArcs() {
+        if (ringArcStart == -1) {
+            return;
+        }
+        for (int i = 0; i < splitRingCount; i++) {
+            splitRings[splitRingList[i]] = false;
+        }
+        splitRingCount = 0;
+        // arcs were added last, hence they are at the head of the lists
+        for (int i = 0; i < tempHeadCount; i++) {
+            int v = tempHeadVertices[i];
+            while (tempHead[v] >= ringArcStart) {
+                tempHead[v] = tempEdgeNext[tempHead[v]];
+            }
+        }
+        tempEdgeCount = ringArcStart;
+        ringArcStart = -1;
+    }
+
+    // lowest weight per straight-line distance of all edges, arcs are never shorter than the chord of their ring edges
+    private double getPotentialScale() {
+        double scale = tempWeightPerDistance;
+        for (int i = 0; i < activatedAreaCount; i++) {
+            int area = activatedAreas[i];
+            for (int ring = base.firstRing(area); ring < base.lastRing(area); ring++) {
+                scale = Math.min(scale, base.ringWeightPerDistance(ring));
+            }
+        }
+        // slightly lower to stay consistent despite rounding errors
+        return scale == Double.POSITIVE_INFINITY ? 0 : scale * (1 - 1e-9);
+    }
+
+    private void relax(int edge, int v, double distance) {
+        if (distance < distances[v]) {
+            if (distances[v] == Double.POSITIVE_INFINITY) {
+                touch(v, distance, edge);
+                heap.insert(v, distance + potentials[v]);
+            } else if (heap.contains(v)) {
+                distances[v] = distance;
+                predecessorEdges[v] = edge;
+                heap.decreaseKey(v, distance + potentials[v]);
+            }
+        }
+    }
+
+    private void touch(int v, double distance, int predecessorEdge) {
+        distances[v] = distance;
+        potentials[v] = potentialScale == 0 ? 0 : potentialScale * getLocation(v).distance(potentialTarget);
+        predecessorEdges[v] = predecessorEdge;
+        if (touchedCount == touched.length) {
+            touched = Arrays.copyOf(touched, touchedCount * 2);
+        }
+        touched[touchedCount++] = v;
+    }
+
+    private void resetSearch() {
+        for (int i = 0; i < touchedCount; i++) {
+            int v = touched[i];
+            distances[v] = Double.POSITIVE_INFINITY;
+            predecessorEdges[v] = -1;
+        }
+        touchedCount = 0;
+        heap.clear();
+        lastTarget = -1;
+    }
+
+    private void addTempEdge(int u, int v, double weight, int ring, int from, int to, int step) {
+        if (tempEdgeCount == tempEdgeTarget.length) {
+            int capacity = tempEdgeCount * 2;
+            tempEdgeTarget = Arrays.copyOf(tempEdgeTarget, capacity);
+            tempEdgeWeight = Arrays.copyOf(tempEdgeWeight, capacity);
+            tempEdgeNext = Arrays.copyOf(tempEdgeNext, capacity);
+            tempEdgeSource = Arrays.copyOf(tempEdgeSource, capacity);
+            tempEdgeRing = Arrays.copyOf(tempEdgeRing, capacity);
+            tempEdgeFrom = Arrays.copyOf(tempEdgeFrom, capacity);
+            tempEdgeTo = Arrays.copyOf(tempEdgeTo, capacity);
+            tempEdgeStep = Arrays.copyOf(tempEdgeStep, capacity);
+        }
+        if (tempHead[u] == -1) {
+            if (tempHeadCount == tempHeadVertices.length) {
+                tempHeadVertices = Arrays.copyOf(tempHeadVertices, tempHeadCount * 2);
+            }
+            tempHeadVertices[tempHeadCount++] = u;
+        }
+        tempEdgeTarget[tempEdgeCount] = v;
+        tempEdgeWeight[tempEdgeCount] = weight;
+        tempEdgeSource[tempEdgeCount] = u;
+        tempEdgeRing[tempEdgeCount] = ring;
+        tempEdgeFrom[tempEdgeCount] = from;
+        tempEdgeTo[tempEdgeCount] = to;
+        tempEdgeStep[tempEdgeCount] = step;
+        tempEdgeNext[tempEdgeCount] = tempHead[u];
+        tempHead[u] = tempEdgeCount++;
+    }
+
+    private void growTempVertices() {
+        int oldCapacity = baseVertices + tempLocations.length;
+        int newTempCapacity = tempLocations.length * 2;
+        int capacity = baseVertices + newTempCapacity;
+        tempLocations = Arrays.copyOf(tempLocations, newTempCapacity);
+
+        tempHead = Arrays.copyOf(tempHead, capacity);
+        Arrays.fill(tempHead, oldCapacity, capacity, -1);
+        distances = Arrays.copyOf(distances, capacity);
+        Arrays.fill(distances, oldCapacity, capacity, Double.POSITIVE_INFINITY);
+        potentials = Arrays.copyOf(potentials, capacity);
+        predecessorEdges = Arrays.copyOf(predecessorEdges, capacity);
+        Arrays.fill(predecessorEdges, oldCapacity, capacity, -1);
+        heap.ensureCapacity(capacity);
+    }
+}
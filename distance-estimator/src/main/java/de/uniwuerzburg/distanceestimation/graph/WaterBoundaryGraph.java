@@ -0,0 +1,411 @@
+package de.uniwuerzburg.distanceestimation.graph;
+
+import de.uniwuerzburg.distanceestimation.models.GeoLocation;
+import de.uniwuerzburg.distanceestimation.models.mapInfo.Edge;
+import de.uniwuerzburg.distanceestimation.models.mapInfo.WaterArea;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Immutable union of the water graphs of all (split) water areas. Each water graph is the exterior ring of a
+ * simplified polygon, hence it is stored as the sequence of its vertices together with cumulative edge lengths. The
+ * distance between two positions of the same ring is the difference of their prefix sums (in either direction round
+ * the ring), so a query only has to search the few positions where rings touch each other or the query connects.
+ *
+ * Vertices are identified by dense integer ids. Positions of a ring are numbered 0..length, where position length is
+ * the closing vertex (same as position 0).
+ *
+ * All ring vertices apart from the shared ones have degree two, hence they are contracted into a static core graph:
+ * consecutive shared positions of a ring are connected by core edges (in both directions round the ring). A query
+ * only has to split the core edges of the rings it attaches to.
+ */
+public final class WaterBoundaryGraph {
+    private final GeoLocation[] locations;
+    private final Map<GeoLocation, Integer> vertexIds;
+    private final int areaCount;
+
+    // rings of area a are [areaRingOffsets[a], areaRingOffsets[a + 1])
+    private final int[] areaRingOffsets;
+
+    // ring r is stored at [ringOffsets[r], ringOffsets[r + 1]) including its closing vertex
+    private final int[] ringOffsets;
+    private final int[] ringVertices;
+    private final double[] ringPrefix;
+    private final int[] ringAreas;
+    // lowest ratio of edge weight to straight-line coordinate distance of each ring, scales lower bounds of A*
+    private final double[] ringWeightPerDistance;
+
+    // (ring, position) occurrences of vertex v are stored at [occurrenceOffsets[v], occurrenceOffsets[v + 1])
+    private final int[] occurrenceOffsets;
+    private final int[] occurrenceRings;
+    private final int[] occurrencePositions;
+
+    // positions of ring r whose vertex occurs more than once, sorted, stored at [junctionOffsets[r], junctionOffsets[r + 1])
+    private final int[] junctionOffsets;
+    private final int[] junctionPositions;
+
+    // core edges leaving vertex v are stored at [coreOffsets[v], coreOffsets[v + 1]), each spans the positions from
+    // coreFrom to coreTo of its ring in direction coreStep (+1 or -1)
+    private final int[] coreOffsets;
+    private final int[] coreTargets;
+    private final double[] coreWeights;
+    private final int[] coreRings;
+    private final int[] coreFrom;
+    private final int[] coreTo;
+    private final int[] coreStep;
+
+    private final OverlayGraph.Pool overlayPool;
+
+    private WaterBoundaryGraph(GeoLocation[] locations, Map<GeoLocation, Integer> vertexIds,
+                               int areaCount, int[] areaRingOffsets, int[] ringOffsets,
+                               int[] ringVertices, double[] ringPrefix, int[] ringAreas, double[] ringWeightPerDistance,
+                               int[] occurrenceOffsets, int[] occurrenceRings, int[] occurrencePositions,
+                               int[] junctionOffsets, int[] junctionPositions, int[] coreOffsets, int[] coreTargets,
+                               double[] coreWeights, int[] coreRings, int[] coreFrom, int[] coreTo, int[] coreStep,
+                               int maxOverlays) {
+        this.locations = locations;
+        this.vertexIds = vertexIds;
+        this.areaCount = areaCount;
+        this.areaRingOffsets = areaRingOffsets;
+        this.ringOffsets = ringOffsets;
+        this.ringVertices = ringVertices;
+        this.ringPrefix = ringPrefix;
+        this.ringAreas = ringAreas;
+        this.ringWeightPerDistance = ringWeightPerDistance;
+        this.occurrenceOffsets = occurrenceOffsets;
+        this.occurrenceRings = occurrenceRings;
+        this.occurrencePositions = occurrencePositions;
+        this.junctionOffsets = junctionOffsets;
+        this.junctionPositions = junctionPositions;
+        this.coreOffsets = coreOffsets;
+        this.coreTargets = coreTargets;
+        this.coreWeights = coreWeights;
+        this.coreRings = coreRings;
+        this.coreFrom = coreFrom;
+        this.coreTo = coreTo;
+        this.coreStep = coreStep;
+        this.overlayPool = new OverlayGraph.Pool(maxOverlays);
+    }
+
+    public static WaterBoundaryGraph build(Map<WaterArea, SimpleWeightedGraph<GeoLocation, Edge>> waterGraphs,
+                                           Map<WaterArea, List<LineString>> boundaries, int areaCount) {
+        return build(waterGraphs, boundaries, areaCount, 0);
+    }
+
+    /*
+     * Areas are identified by their ids (WaterArea.getId), which have to be smaller than areaCount. At most maxOverlays
+     * queries run on the graph at the same time, 0 allows one per core.
+     */
+    public static WaterBoundaryGraph build(Map<WaterArea, SimpleWeightedGraph<GeoLocation, Edge>> waterGraphs,
+                                           Map<WaterArea, List<LineString>> boundaries, int areaCount,
+                                           int maxOverlays) {
+        Map<GeoLocation, Integer> vertexIds = new HashMap<>();
+        List<GeoLocation> locations = new ArrayList<>();
+
+        WaterArea[] areas = new WaterArea[areaCount];
+        for (WaterArea w : waterGraphs.keySet()) {
+            areas[w.getId()] = w;
+        }
+
+        List<int[]> rings = new ArrayList<>();
+        List<double[]> prefixes = new ArrayList<>();
+        List<Integer> ringAreaList = new ArrayList<>();
+        int[] areaRingOffsets = new int[areaCount + 1];
+        for (int areaId = 0; areaId < areaCount; areaId++) {
+            WaterArea w = areas[areaId];
+            if (w == null) {
+                areaRingOffsets[areaId + 1] = rings.size();
+                continue;
+            }
+            SimpleWeightedGraph<GeoLocation, Edge> graph = waterGraphs.get(w);
+            for (LineString boundary : boundaries.get(w)) {
+                Coordinate[] coordinates = boundary.getCoordinates();
+                if (coordinates.length < 2) {
+                    continue;
+                }
+                int[] ring = new int[coordinates.length];
+                double[] prefix = new double[coordinates.length];
+                GeoLocation last = null;
+                for (int k = 0; k < coordinates.length; k++) {
+                    GeoLocation location = new GeoLocation(coordinates[k]);
+                    ring[k] = vertexId(location, vertexIds, locations);
+                    if (last != null) {
+                        // same weights as in the water graph itself
+                        Edge e = last.equals(location) ? null : graph.getEdge(last, location);
+                        prefix[k] = prefix[k - 1] + (e == null ? 0 : graph.getEdgeWeight(e));
+                    }
+                    last = location;
+                }
+                rings.add(ring);
+                prefixes.add(prefix);
+                ringAreaList.add(areaId);
+            }
+            areaRingOffsets[areaId + 1] = rings.size();
+        }
+
+        int ringCount = rings.size();
+        int[] ringOffsets = new int[ringCount + 1];
+        for (int r = 0; r < ringCount; r++) {
+            ringOffsets[r + 1] = ringOffsets[r] + rings.get(r).length;
+        }
+        int[] ringVertices = new int[ringOffsets[ringCount]];
+        double[] ringPrefix = new double[ringOffsets[ringCount]];
+        int[] ringAreas = new int[ringCount];
+        double[] ringWeightPerDistance = new double[ringCount];
+        for (int r = 0; r < ringCount; r++) {
+            int[] ring = rings.get(r);
+            double[] prefix = prefixes.get(r);
+            System.arraycopy(ring, 0, ringVertices, ringOffsets[r], ring.length);
+            System.arraycopy(prefix, 0, ringPrefix, ringOffsets[r], ring.length);
+            ringAreas[r] = ringAreaList.get(r);
+
+            double ratio = Double.POSITIVE_INFINITY;
+            for (int k = 1; k < ring.length; k++) {
+                double distance = locations.get(ring[k - 1]).distance(locations.get(ring[k]));
+                if (distance > 0) {
+                    ratio = Math.min(ratio, (prefix[k] - prefix[k - 1]) / distance);
+                }
+            }
+            ringWeightPerDistance[r] = ratio;
+        }
+
+        // occurrences of each vertex, the closing vertex of a ring is not counted twice
+        int n = locations.size();
+        int[] occurrenceOffsets = new int[n + 1];
+        for (int r = 0; r < ringCount; r++) {
+            for (int p = ringOffsets[r]; p < ringOffsets[r + 1] - 1; p++) {
+                occurrenceOffsets[ringVertices[p] + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            occurrenceOffsets[v + 1] += occurrenceOffsets[v];
+        }
+        int[] next = occurrenceOffsets.clone();
+        int[] occurrenceRings = new int[occurrenceOffsets[n]];
+        int[] occurrencePositions = new int[occurrenceOffsets[n]];
+        for (int r = 0; r < ringCount; r++) {
+            for (int p = ringOffsets[r]; p < ringOffsets[r + 1] - 1; p++) {
+                int slot = next[ringVertices[p]]++;
+                occurrenceRings[slot] = r;
+                occurrencePositions[slot] = p - ringOffsets[r];
+            }
+        }
+
+        // vertices occurring more than once connect rings (or a ring with itself) and have to be kept in each query
+        int[] junctionOffsets = new int[ringCount + 1];
+        List<Integer> junctions = new ArrayList<>();
+        for (int r = 0; r < ringCount; r++) {
+            for (int p = ringOffsets[r]; p < ringOffsets[r + 1] - 1; p++) {
+                int v = ringVertices[p];
+                if (occurrenceOffsets[v + 1] - occurrenceOffsets[v] > 1) {
+                    junctions.add(p - ringOffsets[r]);
+                }
+            }
+            junctionOffsets[r + 1] = junctions.size();
+        }
+
+        int[] junctionPositions = junctions.stream().mapToInt(Integer::intValue).toArray();
+
+        // core edges between consecutive junctions of each ring, the last one wraps across position 0
+        List<int[]> coreEdges = new ArrayList<>();
+        List<Double> coreEdgeWeights = new ArrayList<>();
+        for (int r = 0; r < ringCount; r++) {
+            int first = junctionOffsets[r];
+            int last = junctionOffsets[r + 1] - 1;
+            int length = ringOffsets[r + 1] - ringOffsets[r] - 1;
+            for (int j = first; j < last; j++) {
+                int from = junctionPositions[j];
+                int to = junctionPositions[j + 1];
+                addCoreEdge(r, from, to, ringPrefix[ringOffsets[r] + to] - ringPrefix[ringOffsets[r] + from],
+                        ringVertices, ringOffsets, coreEdges, coreEdgeWeights);
+            }
+            if (last > first) {
+                int from = junctionPositions[last];
+                int to = junctionPositions[first];
+                double total = ringPrefix[ringOffsets[r] + length];
+                addCoreEdge(r, from, to,
+                        total - ringPrefix[ringOffsets[r] + from] + ringPrefix[ringOffsets[r] + to],
+                        ringVertices, ringOffsets, coreEdges, coreEdgeWeights);
+            }
+        }
+        int[] coreOffsets = new int[n + 1];
+        for (int[] edge : coreEdges) {
+            coreOffsets[edge[0] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            coreOffsets[v + 1] += coreOffsets[v];
+        }
+        int m = coreEdges.size();
+        int[] coreTargets = new int[m];
+        double[] coreWeights = new double[m];
+        int[] coreRings = new int[m];
+        int[] coreFrom = new int[m];
+        int[] coreTo = new int[m];
+        int[] coreStep = new int[m];
+        int[] nextCore = coreOffsets.clone();
+        for (int i = 0; i < m; i++) {
+            int[] edge = coreEdges.get(i);
+            int slot = nextCore[edge[0]]++;
+            coreTargets[slot] = edge[1];
+            coreWeights[slot] = coreEdgeWeights.get(i);
+            coreRings[slot] = edge[2];
+            coreFrom[slot] = edge[3];
+            coreTo[slot] = edge[4];
+            coreStep[slot] = edge[5];
+        }
+
+        return new WaterBoundaryGraph(locations.toArray(new GeoLocation[0]), vertexIds, areaCount, areaRingOffsets,
+                ringOffsets, ringVertices, ringPrefix, ringAreas, ringWeightPerDistance, occurrenceOffsets,
+                occurrenceRings, occurrencePositions, junctionOffsets, junctionPositions, coreOffsets, coreTargets,
+                coreWeights, coreRings, coreFrom, coreTo, coreStep,
+                maxOverlays > 0 ? maxOverlays : Runtime.getRuntime().availableProcessors());
+    }
+
+    // adds the arc from position from to position to (forward) in both directions, stored as
+    // [source, target, ring, from, to, step]
+    private static void addCoreEdge(int ring, int from, int to, double weight, int[] ringVertices, int[] ringOffsets,
+                                    List<int[]> coreEdges, List<Double> coreEdgeWeights) {
+        int u = ringVertices[ringOffsets[ring] + from];
+        int v = ringVertices[ringOffsets[ring] + to];
+        if (u == v) {
+            return;
+        }
+        coreEdges.add(new int[]{u, v, ring, from, to, 1});
+        coreEdgeWeights.add(weight);
+        coreEdges.add(new int[]{v, u, ring, to, from, -1});
+        coreEdgeWeights.add(weight);
+    }
+
+    private static int vertexId(GeoLocation location, Map<GeoLocation, Integer> vertexIds, List<GeoLocation> locations) {
+        Integer id = vertexIds.get(location);
+        if (id == null) {
+            id = locations.size();
+            vertexIds.put(location, id);
+            locations.add(location);
+        }
+        return id;
+    }
+
+    OverlayGraph.Pool getOverlayPool() {
+        return overlayPool;
+    }
+
+    public int getVertexCount() {
+        return locations.length;
+    }
+
+    public int getAreaCount() {
+        return areaCount;
+    }
+
+    // -1 if the location is not a vertex of any water graph
+    public int getVertexId(GeoLocation location) {
+        Integer id = vertexIds.get(location);
+        return id == null ? -1 : id;
+    }
+
+    public GeoLocation getLocation(int vertex) {
+        return locations[vertex];
+    }
+
+    int getRingCount() {
+        return ringAreas.length;
+    }
+
+    int firstRing(int area) {
+        return areaRingOffsets[area];
+    }
+
+    int lastRing(int area) {
+        return areaRingOffsets[area + 1];
+    }
+
+    int ringArea(int ring) {
+        return ringAreas[ring];
+    }
+
+    // infinity if all edges of the ring have length 0
+    double ringWeightPerDistance(int ring) {
+        return ringWeightPerDistance[ring];
+    }
+
+    // number of edges of the ring, positions range from 0 to length (closing vertex)
+    int ringLength(int ring) {
+        return ringOffsets[ring + 1] - ringOffsets[ring] - 1;
+    }
+
+    int ringVertex(int ring, int position) {
+        return ringVertices[ringOffsets[ring] + position];
+    }
+
+    // length from position 0 to the given position in forward direction
+    double ringPrefix(int ring, int position) {
+        return ringPrefix[ringOffsets[ring] + position];
+    }
+
+    int firstOccurrence(int vertex) {
+        return occurrenceOffsets[vertex];
+    }
+
+    int lastOccurrence(int vertex) {
+        return occurrenceOffsets[vertex + 1];
+    }
+
+    int occurrenceRing(int occurrence) {
+        return occurrenceRings[occurrence];
+    }
+
+    int occurrencePosition(int occurrence) {
+        return occurrencePositions[occurrence];
+    }
+
+    int firstJunction(int ring) {
+        return junctionOffsets[ring];
+    }
+
+    int lastJunction(int ring) {
+        return junctionOffsets[ring + 1];
+    }
+
+    int junctionPosition(int junction) {
+        return junctionPositions[junction];
+    }
+
+    int firstCoreEdge(int vertex) {
+        return coreOffsets[vertex];
+    }
+
+    int lastCoreEdge(int vertex) {
+        return coreOffsets[vertex + 1];
+    }
+
+    int coreTarget(int edge) {
+        return coreTargets[edge];
+    }
+
+    double coreWeight(int edge) {
+        return coreWeights[edge];
+    }
+
+    int coreRing(int edge) {
+        return coreRings[edge];
+    }
+
+    int coreFrom(int edge) {
+        return coreFrom[edge];
+    }
+
+    int coreTo(int edge) {
+        return coreTo[edge];
+    }
+
+    int coreStep(int edge) {
+        return coreStep[edge];
+    }
+}
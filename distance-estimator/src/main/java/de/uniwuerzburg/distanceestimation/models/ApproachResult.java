@@ -0,0 +1,7 @@
+package de.uniwuerzburg.distanceestimation.models;
+
+import org.locationtech.jts.geom.LineString;
+
+// result of a single query of an approach. distanceCircuity and path may be null if not provided / requested
+public record ApproachResult(DistanceEstimate distance, DistanceEstimate distanceCircuity, LineString path) {
+}
@@ -0,0 +1,62 @@
+package de.uniwuerzburg.distanceestimation.models;
+
+import de.uniwuerzburg.distanceestimation.estimation.ApproachType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact little-endian encoding of distance matrices. Layout:
+ * <pre>
+ * magic "DEMX" (4 bytes) | format version (u8) | bytes per value, 4 or 8 (u8) | approach type length (u16)
+ * dataset version (i64) | rows (i32) | columns (i32) | approach type name (ASCII)
+ * rows * columns values in meters, row-major, NaN for failed estimations
+ * </pre>
+ */
+public class BinaryDistanceMatrix {
+    public static final String MEDIA_TYPE_VALUE = "application/x-distance-matrix";
+    private static final byte[] MAGIC = {'D', 'E', 'M', 'X'};
+    private static final byte FORMAT_VERSION = 1;
+
+    public enum Precision {
+        FLOAT32(Float.BYTES), FLOAT64(Double.BYTES);
+
+        private final int bytes;
+
+        Precision(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    public static byte[] encode(ApproachType approachType, long datasetVersion, DistanceEstimate[][] matrix,
+                                Precision precision) {
+        int rows = matrix.length;
+        int columns = rows == 0 ? 0 : matrix[0].length;
+        byte[] approachTypeName = approachType.name().getBytes(StandardCharsets.US_ASCII);
+        int headerSize = MAGIC.length + 4 + Long.BYTES + 2 * Integer.BYTES + approachTypeName.length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(headerSize + rows * columns * precision.bytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC);
+        buffer.put(FORMAT_VERSION);
+        buffer.put((byte) precision.bytes);
+        buffer.putShort((short) approachTypeName.length);
+        buffer.putLong(datasetVersion);
+        buffer.putInt(rows);
+        buffer.putInt(columns);
+        buffer.put(approachTypeName);
+
+        for (DistanceEstimate[] row : matrix) {
+            for (DistanceEstimate d : row) {
+                double meters = d == null ? Double.NaN : d.getMeters();
+                if (precision == Precision.FLOAT32) {
+                    buffer.putFloat((float) meters);
+                } else {
+                    buffer.putDouble(meters);
+                }
+            }
+        }
+        return buffer.array();
+    }
+}
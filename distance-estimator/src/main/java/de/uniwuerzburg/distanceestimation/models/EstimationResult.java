@@ -8,4 +8,11 @@ public record EstimationResult(@JsonIgnore DistanceEstimation metric,
                                @JsonIgnore GeoLocation start, @JsonIgnore GeoLocation destination,
                                DistanceEstimate result,
                                DistanceEstimate resultCircuity, long timeNs, @JsonIgnore LineString path,
-                               boolean failed, String errorMsg) {}
+                               boolean failed, String errorMsg) {
+
+    // circuity approaches only provide the circuity result, all others the plain one
+    @JsonIgnore
+    public DistanceEstimate distance() {
+        return result == null ? resultCircuity : result;
+    }
+}
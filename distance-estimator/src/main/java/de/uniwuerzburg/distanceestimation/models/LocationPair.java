@@ -0,0 +1,4 @@
+package de.uniwuerzburg.distanceestimation.models;
+
+public record LocationPair(GeoLocation start, GeoLocation dest) {
+}
@@ -2,6 +2,8 @@ package de.uniwuerzburg.distanceestimation.models.mapInfo;
 
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
 
 import java.util.Objects;
 
@@ -9,17 +11,26 @@ public class WaterArea{
     private final Geometry geometry;
     private final String name;
     private final Envelope envelope;
+    // its indexes are built by the preprocessing of the approaches that use the area
+    private final PreparedGeometry preparedGeometry;
+    // dense index within the preprocessing the area belongs to, -1 until the preprocessing assigned it
+    private int id = -1;
 
     public WaterArea(String name, Geometry geometry) {
         this.geometry = geometry;
         this.name = name;
         this.envelope = geometry.getEnvelopeInternal();
+        this.preparedGeometry = PreparedGeometryFactory.prepare(geometry);
     }
 
     public Geometry getGeom() {
         return geometry;
     }
 
+    public PreparedGeometry getPreparedGeom() {
+        return preparedGeometry;
+    }
+
     public String getName() {
         return name;
     }
@@ -28,6 +39,14 @@ public class WaterArea{
         return envelope;
     }
 
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
     @Override
     public final boolean equals(Object o) {
         if (!(o instanceof WaterArea waterArea)) return false;
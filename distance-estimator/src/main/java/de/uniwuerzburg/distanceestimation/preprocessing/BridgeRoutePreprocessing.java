@@ -1,13 +1,14 @@
 package de.uniwuerzburg.distanceestimation.preprocessing;
 
-import com.github.davidmoten.rtree.RTree;
-import com.github.davidmoten.rtree.geometry.Rectangle;
 import de.uniwuerzburg.distanceestimation.models.*;
 import de.uniwuerzburg.distanceestimation.models.mapInfo.Bridge;
 import de.uniwuerzburg.distanceestimation.models.mapInfo.Street;
 import de.uniwuerzburg.distanceestimation.models.mapInfo.WaterArea;
+import de.uniwuerzburg.distanceestimation.spatial.PackedRTree;
+import de.uniwuerzburg.distanceestimation.spatial.SegmentGrid;
 import de.uniwuerzburg.distanceestimation.util.Debug;
 import org.locationtech.jts.geom.*;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
 import org.locationtech.jts.geom.util.GeometryFixer;
 import org.locationtech.jts.geom.util.LineStringExtracter;
 import org.locationtech.jts.operation.valid.IsValidOp;
@@ -20,14 +21,19 @@ import java.util.concurrent.ConcurrentMap;
 public class BridgeRoutePreprocessing {
     private Set<WaterArea> waterAreas;
     private final Map<WaterArea, Set<Bridge>> waterAreasWithBridgesMap;
-    private final Map<WaterArea, Geometry> simpleWaterAreasMap;
-    private RTree<WaterArea, com.github.davidmoten.rtree.geometry.Geometry> waterAreaTree;
+    private final Map<WaterArea, PreparedGeometry> simpleWaterAreasMap;
+    private PackedRTree<WaterArea> waterAreaTree;
+    private SegmentGrid segmentGrid;
 
     // for split water areas
     private final Set<WaterArea> splitWaterAreas;
     private final ConcurrentMap<WaterArea, Set<Bridge>> splitWaterAreasWithBridges;
-    private final Map<WaterArea, Geometry> simpleSplitWaterAreasMap;
-    private RTree<WaterArea, com.github.davidmoten.rtree.geometry.Geometry> splitWaterAreasTree;
+    private final Map<WaterArea, PreparedGeometry> simpleSplitWaterAreasMap;
+    private PackedRTree<WaterArea> splitWaterAreasTree;
+    private SegmentGrid splitSegmentGrid;
+
+    // ids of the water areas of both variants are smaller than this count
+    private int waterAreaCount;
 
     // variables used during preprocessing
     private final Map<LinearRing, Set<GeoLocation>> tempShortcutsTaken;
@@ -87,21 +93,24 @@ public class BridgeRoutePreprocessing {
         // Create simplified Water Areas
         for (WaterArea w : waterAreas) {
             Geometry simple = TopologyPreservingSimplifier.simplify(w.getGeom(), CommonPreprocessing.SIMPLIFIER_TOLERANCE);
-            simpleWaterAreasMap.put(w, simple);
+            simpleWaterAreasMap.put(w, CommonPreprocessing.prepare(simple));
         }
 
         // insert water areas into r-tree. Only use water areas with bridges!
-        waterAreaTree = RTree.create();
-        for (WaterArea w : waterAreasWithBridgesMap.keySet()) {
-            Rectangle rectangle = com.github.davidmoten.rtree.geometry.Geometries.rectangleGeographic(
-                    w.getEnvelope().getMinX(),
-                    w.getEnvelope().getMinY(),
-                    w.getEnvelope().getMaxX(),
-                    w.getEnvelope().getMaxY());
-            waterAreaTree = waterAreaTree.add(w, rectangle);
-        }
+        waterAreaTree = PackedRTree.build(new ArrayList<>(waterAreasWithBridgesMap.keySet()), WaterArea::getEnvelope);
 
         constructSplitWaterAreas();
+
+        // dense ids of the water areas of both variants, split water areas that were not split are shared
+        waterAreaCount = CommonPreprocessing.assignWaterAreaIds(waterAreas, waterAreasWithBridgesMap.keySet(),
+                simpleWaterAreasMap.keySet(), splitWaterAreas, splitWaterAreasWithBridges.keySet(),
+                simpleSplitWaterAreasMap.keySet());
+
+        // the queries of this approach intersect with the simplified geometries
+        segmentGrid = SegmentGrid.build(waterAreasWithBridgesMap.keySet(),
+                w -> simpleWaterAreasMap.get(w).getGeometry());
+        splitSegmentGrid = SegmentGrid.build(splitWaterAreasWithBridges.keySet(),
+                w -> simpleSplitWaterAreasMap.get(w).getGeometry());
     }
 
     public void constructSplitWaterAreas() {
@@ -236,16 +245,11 @@ public class BridgeRoutePreprocessing {
         }
 
         // Create simplified Water Areas and create R-Tree
-        splitWaterAreasTree = RTree.create();
         for (WaterArea w : splitWaterAreasWithBridges.keySet()) {
             Geometry simple = TopologyPreservingSimplifier.simplify(w.getGeom(), CommonPreprocessing.SIMPLIFIER_TOLERANCE);
-            simpleSplitWaterAreasMap.put(w, simple);
-
-            Rectangle rectangle = com.github.davidmoten.rtree.geometry.Geometries.rectangleGeographic(
-                    w.getEnvelope().getMinX(), w.getEnvelope().getMinY(),
-                    w.getEnvelope().getMaxX(), w.getEnvelope().getMaxY());
-            splitWaterAreasTree = splitWaterAreasTree.add(w, rectangle);
+            simpleSplitWaterAreasMap.put(w, CommonPreprocessing.prepare(simple));
         }
+        splitWaterAreasTree = PackedRTree.build(new ArrayList<>(splitWaterAreasWithBridges.keySet()), WaterArea::getEnvelope);
     }
 
     private LineString multiLineToLine(MultiLineString l) {
@@ -265,15 +269,23 @@ public class BridgeRoutePreprocessing {
         return bridges;
     }
 
-    public RTree<WaterArea, com.github.davidmoten.rtree.geometry.Geometry> getWaterAreaTree() {
+    public int getWaterAreaCount() {
+        return waterAreaCount;
+    }
+
+    public PackedRTree<WaterArea> getWaterAreaTree() {
         return waterAreaTree;
     }
 
+    public SegmentGrid getSegmentGrid() {
+        return segmentGrid;
+    }
+
     public Map<WaterArea, Set<Bridge>> getWaterAreasWithBridgesMap() {
         return waterAreasWithBridgesMap;
     }
 
-    public Map<WaterArea, Geometry> getSimpleWaterAreasMap() {
+    public Map<WaterArea, PreparedGeometry> getSimpleWaterAreasMap() {
         return simpleWaterAreasMap;
     }
 
@@ -289,11 +301,15 @@ public class BridgeRoutePreprocessing {
         return splitWaterAreasWithBridges;
     }
 
-    public RTree<WaterArea, com.github.davidmoten.rtree.geometry.Geometry> getSplitWaterAreasTree() {
+    public PackedRTree<WaterArea> getSplitWaterAreasTree() {
         return splitWaterAreasTree;
     }
 
-    public Map<WaterArea, Geometry> getSimpleSplitWaterAreasMap() {
+    public SegmentGrid getSplitSegmentGrid() {
+        return splitSegmentGrid;
+    }
+
+    public Map<WaterArea, PreparedGeometry> getSimpleSplitWaterAreasMap() {
         return simpleSplitWaterAreasMap;
     }
 }
@@ -7,6 +7,9 @@ import de.uniwuerzburg.distanceestimation.models.mapInfo.Bridge;
 import de.uniwuerzburg.distanceestimation.models.mapInfo.WaterArea;
 import de.uniwuerzburg.distanceestimation.util.Debug;
 import org.locationtech.jts.geom.*;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedPolygon;
 import org.locationtech.proj4j.*;
 
 import java.util.*;
@@ -105,6 +108,34 @@ public class CommonPreprocessing {
         return shortcuts;
     }
 
+    // prepared geometry whose indexes are already built, hence no query has to build them
+    protected static PreparedGeometry prepare(Geometry geometry) {
+        return buildIndexes(PreparedGeometryFactory.prepare(geometry));
+    }
+
+    protected static PreparedGeometry buildIndexes(PreparedGeometry prepared) {
+        if (prepared instanceof PreparedPolygon polygon) {
+            polygon.getIntersectionFinder();
+            polygon.getPointLocator();
+        }
+        return prepared;
+    }
+
+    /*
+     * Assigns dense ids to all given water areas, equal areas get the same id. Queries use the ids to index arrays
+     * instead of hashing the geometries. Returns the number of ids.
+     */
+    @SafeVarargs
+    protected static int assignWaterAreaIds(Collection<WaterArea>... waterAreas) {
+        Map<WaterArea, Integer> ids = new HashMap<>();
+        for (Collection<WaterArea> collection : waterAreas) {
+            for (WaterArea w : collection) {
+                w.setId(ids.computeIfAbsent(w, k -> ids.size()));
+            }
+        }
+        return ids.size();
+    }
+
     public static double getGeometryAreaSquareMeters(Geometry geometry) {
         // Define source and target coordinate reference systems
         CRSFactory crsFactory = new CRSFactory();
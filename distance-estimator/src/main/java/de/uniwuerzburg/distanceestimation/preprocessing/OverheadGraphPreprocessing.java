@@ -19,17 +19,34 @@ import java.io.*;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class OverheadGraphPreprocessing {
     private final int KD_TREE_DIMENSION = 2;
     private final String PREPROCESSING_PATH;
     private final int N_RANDOM_POINTS;
+    private final boolean virtualThreads;
+    // upper bound of OSRM requests in flight at the same time on virtual threads
+    private final int maxConcurrentRequests;
 
     private KDTree<GeoLocation> locationKDTree;
     private HashMap<GeoLocation, HashMap<GeoLocation, Double>> circuityLookupMap;
     private HashMap<GeoLocation, Double> circuityMinimumLookupMap;
 
     public OverheadGraphPreprocessing(int n_random_points) {
+        this(n_random_points, false, 1);
+    }
+
+    public OverheadGraphPreprocessing(int n_random_points, boolean virtualThreads, int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be positive: " + maxConcurrentRequests);
+        }
+        this.virtualThreads = virtualThreads;
+        this.maxConcurrentRequests = maxConcurrentRequests;
         this.locationKDTree = new KDTree<>(KD_TREE_DIMENSION);
         this.circuityLookupMap = new HashMap<>();
         this.circuityMinimumLookupMap = new HashMap<>();
@@ -52,9 +69,18 @@ public class OverheadGraphPreprocessing {
 
         // 2. Snap random Locations and insert them into kdTree
         List<GeoLocation> snappedLocations = new ArrayList<>();
-        OsrmClient osrmClient = new OsrmClient();
-        for (GeoLocation location : randomLocations) {
-            GeoLocation responseLocation = getSnappedLocation(osrmClient, location);
+        OsrmClient osrmClient = new OsrmClient(virtualThreads);
+        List<GeoLocation> randomLocationsList = new ArrayList<>(randomLocations);
+        GeoLocation[] responseLocations = new GeoLocation[randomLocationsList.size()];
+        try (OsrmCalls calls = new OsrmCalls()) {
+            for (int k = 0; k < randomLocationsList.size(); k++) {
+                int index = k;
+                calls.submit(() -> responseLocations[index] = getSnappedLocation(osrmClient, randomLocationsList.get(index)));
+            }
+        }
+        for (int k = 0; k < randomLocationsList.size(); k++) {
+            GeoLocation location = randomLocationsList.get(k);
+            GeoLocation responseLocation = responseLocations[k];
 
             if (responseLocation == null) {
                 continue;
@@ -84,25 +110,38 @@ public class OverheadGraphPreprocessing {
         OsrmEstimation osrmEstimation = new OsrmEstimation(osrmClient);
         GreatCircleDistance greatCircleDistance = new GreatCircleDistance();
 
-        int number_of_all_iterations = snappedLocations.size() * snappedLocations.size();
-        int current_iteration = 0;
-
-        for (int i = 0; i < snappedLocations.size(); i++) {
-            for (int j = 0; j < snappedLocations.size(); j++) {
-                current_iteration += 1;
-
-                if (current_iteration % 1000 == 0) {
-                    System.out.println(current_iteration + "/" + number_of_all_iterations);
+        // both directions share the same value, hence each unordered pair (i < j) is only requested once
+        int n = snappedLocations.size();
+        int number_of_all_iterations = n * (n - 1) / 2;
+        double[] osrmDistances = new double[number_of_all_iterations];
+        AtomicInteger current_iteration = new AtomicInteger();
+        try (OsrmCalls calls = new OsrmCalls()) {
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    GeoLocation start = snappedLocations.get(i);
+                    GeoLocation dest = snappedLocations.get(j);
+                    int pair = k++;
+                    calls.submit(() -> {
+                        osrmDistances[pair] = osrmEstimation.estimateDistance(start, dest).getMeters();
+                        int iteration = current_iteration.incrementAndGet();
+                        if (iteration % 1000 == 0) {
+                            System.out.println(iteration + "/" + number_of_all_iterations);
+                        }
+                    });
                 }
+            }
+        }
 
-                if (i == j) continue;
-
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
                 GeoLocation start = snappedLocations.get(i);
                 GeoLocation dest = snappedLocations.get(j);
+                double distOsrm = osrmDistances[k++];
 
                 if (!isInLookupMap(start, dest)) {
                     // calculate distances
-                    double distOsrm = osrmEstimation.estimateDistance(start, dest).getMeters();
                     double distGreatCircle = greatCircleDistance.estimateDistance(start, dest).getMeters();
 
                     if (Double.isFinite(distOsrm) && Double.isFinite(distGreatCircle)) {
@@ -114,7 +153,6 @@ public class OverheadGraphPreprocessing {
                         Debug.message("\t- distOsrm = " + distOsrm);
                         Debug.message("\t- distGreatCircle = " + distGreatCircle);
                     }
-
                 }
             }
         }
@@ -126,6 +164,53 @@ public class OverheadGraphPreprocessing {
         savePreprocessingToDisk();
     }
 
+    /*
+     * Runs the submitted OSRM calls in the calling thread, or on virtual threads if enabled. Then at most
+     * maxConcurrentRequests calls are in flight, submit blocks until a permit is free, hence the calls can be generated
+     * lazily. Closing waits for all calls and rethrows the first failure.
+     */
+    private final class OsrmCalls implements AutoCloseable {
+        private final ExecutorService executor = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        private final Semaphore permits = new Semaphore(maxConcurrentRequests);
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        void submit(Runnable call) {
+            if (executor == null) {
+                call.run();
+                return;
+            }
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            if (failure.get() != null) {
+                permits.release();
+                return;
+            }
+            executor.execute(() -> {
+                try {
+                    call.run();
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void close() {
+            if (executor != null) {
+                executor.close();
+            }
+            if (failure.get() != null) {
+                throw new IllegalStateException(failure.get());
+            }
+        }
+    }
+
     private GeoLocation getSnappedLocation(OsrmClient osrmClient, GeoLocation location){
         OsrmLocation referenceLocation = new OsrmLocation(new GeoLocation(49.793094, 9.936605));
         OsrmRouteRequest request = new OsrmRouteRequest(new OsrmLocation(location), referenceLocation);
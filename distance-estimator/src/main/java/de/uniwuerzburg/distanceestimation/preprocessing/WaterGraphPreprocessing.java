@@ -1,20 +1,23 @@
 package de.uniwuerzburg.distanceestimation.preprocessing;
 
-import com.github.davidmoten.rtree.RTree;
-import com.github.davidmoten.rtree.geometry.Rectangle;
 import de.uniwuerzburg.distanceestimation.estimation.AirlineDistance;
 import de.uniwuerzburg.distanceestimation.estimation.DistanceEstimation;
 import de.uniwuerzburg.distanceestimation.estimation.EuclideanDistance;
+import de.uniwuerzburg.distanceestimation.graph.WaterBoundaryGraph;
 import de.uniwuerzburg.distanceestimation.models.*;
 import de.uniwuerzburg.distanceestimation.models.mapInfo.Bridge;
 import de.uniwuerzburg.distanceestimation.models.mapInfo.Edge;
 import de.uniwuerzburg.distanceestimation.models.mapInfo.Street;
 import de.uniwuerzburg.distanceestimation.models.mapInfo.WaterArea;
+import de.uniwuerzburg.distanceestimation.spatial.PackedRTree;
+import de.uniwuerzburg.distanceestimation.spatial.SegmentGrid;
+import de.uniwuerzburg.distanceestimation.spatial.WaterRaster;
 import de.uniwuerzburg.distanceestimation.util.Debug;
 import org.jgrapht.graph.SimpleWeightedGraph;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.geom.util.GeometryFixer;
 import org.locationtech.jts.geom.util.LineStringExtracter;
+import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.io.geojson.GeoJsonWriter;
 import org.locationtech.jts.operation.valid.IsValidOp;
 import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
@@ -28,18 +31,30 @@ public class WaterGraphPreprocessing {
 
     private final Map<WaterArea, Geometry> simpleWaterAreasMap;
     private final Map<WaterArea, Geometry> simpleWaterAreasWithBridgesMap;
-    private RTree<WaterArea, com.github.davidmoten.rtree.geometry.Geometry> waterAreaTree;
+    private PackedRTree<WaterArea> waterAreaTree;
+    private SegmentGrid segmentGrid;
+    private WaterRaster waterRaster;
 
     private final Set<WaterArea> simpleSplitWaterAreas;
     private final Map<WaterArea, SimpleWeightedGraph<GeoLocation, Edge>> waterGraphs;
     private final Map<WaterArea, Set<LineString>> waterGraphEdges;
+    private final Map<WaterArea, STRtree> waterGraphEdgeIndex;
+    private final Map<WaterArea, List<LineString>> waterGraphBoundaries;
     private final Map<WaterArea, Set<GeoLocation>> newBridges;
+    private WaterBoundaryGraph waterBoundaryGraph;
+    private int waterAreaCount;
 
     private final Map<LinearRing, Set<GeoLocation>> tempShortcutsTaken;
     private final boolean circuityInGraph;
+    // concurrent queries on the water boundary graph, 0 allows one per core
+    private final int maxOverlays;
     private final boolean onlyImportantWaterAreas;
 
     public WaterGraphPreprocessing(boolean circuityInGraph) {
+        this(circuityInGraph, 0);
+    }
+
+    public WaterGraphPreprocessing(boolean circuityInGraph, int maxOverlays) {
         this.waterAreasWithBridgesMap = new HashMap<>();
         this.waterAreas = new HashSet<>();
         this.simpleWaterAreasMap = new HashMap<>();
@@ -47,9 +62,12 @@ public class WaterGraphPreprocessing {
         this.waterGraphs = new HashMap<>();
         this.simpleSplitWaterAreas = new HashSet<>();
         this.waterGraphEdges = new HashMap<>();
+        this.waterGraphEdgeIndex = new HashMap<>();
+        this.waterGraphBoundaries = new HashMap<>();
         this.newBridges = new HashMap<>();
         this.tempShortcutsTaken = new HashMap<>();
         this.circuityInGraph = circuityInGraph;
+        this.maxOverlays = maxOverlays;
         this.onlyImportantWaterAreas = true;
     }
 
@@ -207,10 +225,25 @@ public class WaterGraphPreprocessing {
                     }
                     newBridges.put(newWater, newNearestGeoLocationToBridgesSet);
                 }
+            }
+
+        }
+
+        // Create Graphs & R-Tree
+        for (WaterArea w : simpleSplitWaterAreas) {
+            List<LineString> boundaries = getWaterGraphBoundaries(w);
+            waterGraphBoundaries.put(w, boundaries);
+
+            SimpleWeightedGraph<GeoLocation, Edge> graph = new SimpleWeightedGraph<>(Edge.class);
+            for (LineString boundary : boundaries) {
+                addAllFromGeometryToGraph(graph, boundary, simpleMetric);
+            }
+            waterGraphs.put(w, graph);
 
-                // Save Linestring Edges of Polygon for later
-                Coordinate[] simpleMyLocations = simple.getExteriorRing().getCoordinates();
-                Set<LineString> lines = new HashSet<>();
+            // Save Linestring Edges of Polygon for later
+            Set<LineString> lines = new HashSet<>();
+            for (LineString boundary : boundaries) {
+                Coordinate[] simpleMyLocations = boundary.getCoordinates();
                 for (int i = 0; i < simpleMyLocations.length - 1; i++) {
                     GeoLocation[] arr = new GeoLocation[2];
                     arr[0] = new GeoLocation(simpleMyLocations[i]);
@@ -218,32 +251,42 @@ public class WaterGraphPreprocessing {
                     LineString line = Factory.FACTORY.createLineString(arr);
                     lines.add(line);
                 }
-                waterGraphEdges.put(newWater, lines);
             }
+            waterGraphEdges.put(w, lines);
 
+            // Spatial index of the edges for nearest edge queries, built eagerly so that queries are read-only
+            STRtree edgeIndex = new STRtree();
+            for (LineString line : lines) {
+                edgeIndex.insert(line.getEnvelopeInternal(), line);
+            }
+            edgeIndex.build();
+            waterGraphEdgeIndex.put(w, edgeIndex);
+            // queries intersect their direct line with the unsimplified geometry
+            CommonPreprocessing.buildIndexes(w.getPreparedGeom());
         }
+        waterAreaTree = PackedRTree.build(new ArrayList<>(simpleSplitWaterAreas), WaterArea::getEnvelope);
 
-        // Create Graphs & R-Tree
-        waterAreaTree = RTree.create();
-        for (WaterArea w : simpleSplitWaterAreas) {
-            SimpleWeightedGraph<GeoLocation, Edge> graph = new SimpleWeightedGraph<>(Edge.class);
-            for (int i = 0; i < w.getGeom().getNumGeometries(); i++) {
-                Polygon polygon = (Polygon) w.getGeom().getGeometryN(i);
-                addAllFromGeometryToGraph(graph, polygon.getExteriorRing(), simpleMetric);
-            }
-            waterGraphs.put(w, graph);
+        // dense ids of the water areas used by queries
+        waterAreaCount = CommonPreprocessing.assignWaterAreaIds(simpleSplitWaterAreas, waterGraphs.keySet(),
+                waterGraphBoundaries.keySet(), waterGraphEdgeIndex.keySet(), newBridges.keySet());
+        segmentGrid = SegmentGrid.build(simpleSplitWaterAreas, WaterArea::getGeom);
+        waterRaster = WaterRaster.build(simpleSplitWaterAreas, WaterArea::getPreparedGeom);
 
-            Rectangle rectangle = com.github.davidmoten.rtree.geometry.Geometries.rectangleGeographic(
-                    w.getEnvelope().getMinX(),
-                    w.getEnvelope().getMinY(),
-                    w.getEnvelope().getMaxX(),
-                    w.getEnvelope().getMaxY());
-            waterAreaTree = waterAreaTree.add(w, rectangle);
-        }
+        // one immutable graph of all water areas, queries only add their temporary edges on top of it
+        waterBoundaryGraph = WaterBoundaryGraph.build(waterGraphs, waterGraphBoundaries, waterAreaCount, maxOverlays);
 
         return waterGraphs;
     }
 
+    // the water graph of an area consists of the exterior rings of its simplified polygons
+    private List<LineString> getWaterGraphBoundaries(WaterArea w) {
+        List<LineString> boundaries = new ArrayList<>();
+        for (int i = 0; i < w.getGeom().getNumGeometries(); i++) {
+            boundaries.add(((Polygon) w.getGeom().getGeometryN(i)).getExteriorRing());
+        }
+        return boundaries;
+    }
+
     private void addAllFromGeometryToGraph(SimpleWeightedGraph<GeoLocation, Edge> graph,
                                            Geometry g, AirlineDistance simpleMetric) {
         GeoLocation last = null;
@@ -308,6 +351,15 @@ public class WaterGraphPreprocessing {
         return waterGraphs;
     }
 
+    public WaterBoundaryGraph getWaterBoundaryGraph() {
+        return waterBoundaryGraph;
+    }
+
+    // ids of the simple split water areas are smaller than this count
+    public int getWaterAreaCount() {
+        return waterAreaCount;
+    }
+
     public Set<WaterArea> getSimpleSplitWaterAreas() {
         return simpleSplitWaterAreas;
     }
@@ -316,14 +368,30 @@ public class WaterGraphPreprocessing {
         return waterGraphEdges;
     }
 
+    public Map<WaterArea, List<LineString>> getWaterGraphBoundaries() {
+        return waterGraphBoundaries;
+    }
+
+    public Map<WaterArea, STRtree> getWaterGraphEdgeIndex() {
+        return waterGraphEdgeIndex;
+    }
+
     public Map<WaterArea, Set<GeoLocation>> getNewBridges() {
         return newBridges;
     }
 
-    public RTree<WaterArea, com.github.davidmoten.rtree.geometry.Geometry> getWaterAreaTree() {
+    public PackedRTree<WaterArea> getWaterAreaTree() {
         return waterAreaTree;
     }
 
+    public SegmentGrid getSegmentGrid() {
+        return segmentGrid;
+    }
+
+    public WaterRaster getWaterRaster() {
+        return waterRaster;
+    }
+
     private void analyzeWaterAreas(){
         Debug.message("largest geometries: ");
         ArrayList<Double> waterAreaSizes = new ArrayList<>();
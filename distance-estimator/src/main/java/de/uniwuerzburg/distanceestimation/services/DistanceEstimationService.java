@@ -4,37 +4,103 @@ import de.uniwuerzburg.distanceestimation.estimation.clients.OsrmClient;
 import de.uniwuerzburg.distanceestimation.clustering.Cluster;
 import de.uniwuerzburg.distanceestimation.clustering.KMeans;
 import de.uniwuerzburg.distanceestimation.estimation.*;
+import de.uniwuerzburg.distanceestimation.models.ApproachResult;
 import de.uniwuerzburg.distanceestimation.models.EstimationResult;
 import de.uniwuerzburg.distanceestimation.models.DistanceEstimate;
 import de.uniwuerzburg.distanceestimation.models.GeoLocation;
+import de.uniwuerzburg.distanceestimation.models.LocationPair;
 import de.uniwuerzburg.distanceestimation.preprocessing.OverheadGraphPreprocessing;
 import de.uniwuerzburg.distanceestimation.util.*;
-import org.locationtech.jts.geom.LineString;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 @Service
 public class DistanceEstimationService {
+    private static final int STREAM_CHUNK_SIZE = 1024;
     private final PreprocessingService preprocessingService;
+    private final EstimationCacheService cacheService;
+    // approaches are stateless, hence one shared instance per type and dataset version is enough
+    private volatile Approaches approaches = new Approaches(-1, new ConcurrentHashMap<>());
+    private final boolean virtualThreads;
+    // limits the requests in flight to external services when fanning out on virtual threads
+    private final Semaphore ioPermits;
+    // identical queries running concurrently share a single computation
+    private final Map<InFlightQuery, CompletableFuture<EstimationResult>> inFlight = new ConcurrentHashMap<>();
+    // bounded pool for CPU-bound work of the asynchronous API
+    private final ExecutorService computeExecutor;
+    private final boolean goalDirectedWaterGraph;
 
     @Autowired
-    public DistanceEstimationService(PreprocessingService preprocessingService) {
+    public DistanceEstimationService(PreprocessingService preprocessingService, EstimationCacheService cacheService,
+                                     @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                                     @Value("${estimation.io.max-concurrent-requests:256}") int maxConcurrentIoRequests,
+                                     @Value("${estimation.compute.threads:0}") int computeThreads,
+                                     @Value("${estimation.water-graph.goal-directed:false}") boolean goalDirectedWaterGraph) {
         this.preprocessingService = preprocessingService;
+        this.cacheService = cacheService;
+        this.virtualThreads = virtualThreads;
+        this.ioPermits = new Semaphore(maxConcurrentIoRequests);
+        this.computeExecutor = Executors.newFixedThreadPool(
+                computeThreads > 0 ? computeThreads : Runtime.getRuntime().availableProcessors());
+        this.goalDirectedWaterGraph = goalDirectedWaterGraph;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        computeExecutor.shutdown();
     }
 
     public DistanceEstimation getDistanceEstimationByType(ApproachType type) {
+        return getVersionedApproach(type).metric();
+    }
+
+    private VersionedApproach getVersionedApproach(ApproachType type) {
+        // the version is read before the data, hence instances are never built from data older than their version
+        long datasetVersion = preprocessingService.getDatasetVersion();
+        Approaches current = approaches;
+        if (current.datasetVersion() != datasetVersion) {
+            // approaches hold references to the replaced preprocessing data
+            current = new Approaches(datasetVersion, new ConcurrentHashMap<>());
+            approaches = current;
+        }
+        return new VersionedApproach(current.datasetVersion(),
+                current.byType().computeIfAbsent(type, this::createDistanceEstimation));
+    }
+
+    // dataset version the shared instance was built from, -1 for instances that were replaced in the meantime
+    private long datasetVersionOf(DistanceEstimation metric) {
+        Approaches current = approaches;
+        return current.byType().get(metric.getApproachType()) == metric ? current.datasetVersion() : -1;
+    }
+
+    private DistanceEstimation createDistanceEstimation(ApproachType type) {
         return switch (type) {
             case AIRLINE -> new EuclideanDistance();
-            case OSRM -> new OsrmEstimation(new OsrmClient());
+            case OSRM -> new OsrmEstimation(new OsrmClient(virtualThreads));
             case HAVERSINE -> new GreatCircleDistance();
             case WATER_GRAPH_CIRCUITY ->
                     new WaterGraphEstimation(preprocessingService.getWaterGraphPreprocessing(),
-                            new EuclideanDistance(), true);
+                            new EuclideanDistance(), true, goalDirectedWaterGraph);
             case WATER_GRAPH ->
                     new WaterGraphEstimation(preprocessingService.getWaterGraphPreprocessing(),
-                            new EuclideanDistance(),false);
+                            new EuclideanDistance(),false, goalDirectedWaterGraph);
             case BRIDGE_NO_REC ->
                     BridgeRouteEstimation.buildApproach(preprocessingService.getBridgeRoutePreprocessing(),
                             new EuclideanDistance(),false, false);
@@ -63,64 +129,300 @@ public class DistanceEstimationService {
     }
 
     public boolean crossesWater(GeoLocation start, GeoLocation destination){
-        WaterGraphEstimation wge = new WaterGraphEstimation(preprocessingService.getWaterGraphPreprocessing(),
-                new EuclideanDistance(),false);
+        WaterGraphEstimation wge = (WaterGraphEstimation) getDistanceEstimationByType(ApproachType.WATER_GRAPH);
 
         return wge.crossesWater(start, destination);
     }
 
     public boolean crossesRiver(GeoLocation start, GeoLocation destination){
-        BridgeRouteEstimation bre = new BridgeRouteEstimation(preprocessingService.getBridgeRoutePreprocessing(),
-                new EuclideanDistance(),false);
+        BridgeRouteEstimation bre = (BridgeRouteEstimation) getDistanceEstimationByType(ApproachType.BRIDGE_SPLIT_NO_REC);
 
         return bre.crossesWater(start, destination);
     }
 
     public EstimationResult estimateDistance(ApproachType type, GeoLocation start, GeoLocation destination, boolean includePath) {
+        return estimateDistance(getDistanceEstimationByType(type), start, destination, includePath);
+    }
+
+    public CompletableFuture<EstimationResult> estimateDistanceAsync(ApproachType type, GeoLocation start,
+                                                                     GeoLocation destination, boolean includePath) {
+        DistanceEstimation metric = getDistanceEstimationByType(type);
+        if (metric instanceof OsrmEstimation osrm) {
+            return estimateDistanceAsync(osrm, start, destination, includePath);
+        }
+        return CompletableFuture.supplyAsync(() -> estimateDistance(metric, start, destination, includePath), computeExecutor);
+    }
+
+    private CompletableFuture<EstimationResult> estimateDistanceAsync(OsrmEstimation metric, GeoLocation start,
+                                                                      GeoLocation destination, boolean includePath) {
+        long datasetVersion = datasetVersionOf(metric);
+        if (!includePath) {
+            EstimationResult cached = cacheService.get(metric.getApproachType(), datasetVersion, start, destination);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(withEndpoints(cached, start, destination));
+            }
+        }
+
+        Debug.message("\n----- Calculate " + metric.getApproachType().toString() + "-----");
+        long startTime = System.nanoTime();
+        return metric.estimateAsync(start, destination, includePath)
+                .thenApply(approachResult -> toEstimationResult(metric, start, destination, approachResult,
+                        System.nanoTime() - startTime))
+                .exceptionally(e -> failedResult(metric, start, destination,
+                        e instanceof CompletionException && e.getCause() != null ? e.getCause() : e))
+                .thenApply(result -> {
+                    if (!includePath) {
+                        cacheService.put(metric.getApproachType(), datasetVersion, start, destination, result);
+                    }
+                    return result;
+                });
+    }
+
+    // evaluates several approaches for the same pair concurrently, sharing their intermediate results
+    public List<EstimationResult> estimateDistance(List<ApproachType> types, GeoLocation start, GeoLocation destination) {
+        QueryContext context = new QueryContext();
+        List<CompletableFuture<EstimationResult>> results = types.stream().distinct().map(type -> {
+            DistanceEstimation metric = getDistanceEstimationByType(type);
+            if (metric instanceof OsrmEstimation osrm) {
+                return estimateDistanceAsync(osrm, start, destination, false);
+            }
+            return CompletableFuture.supplyAsync(() -> estimateDistance(metric, start, destination, false, context),
+                    computeExecutor);
+        }).toList();
+        return results.stream().map(CompletableFuture::join).toList();
+    }
+
+    public List<EstimationResult> estimateDistances(ApproachType type, List<LocationPair> pairs) {
+        return estimateDistances(getDistanceEstimationByType(type), pairs);
+    }
+
+    public void streamDistances(ApproachType type, List<LocationPair> pairs, Consumer<List<EstimationResult>> chunkConsumer) {
         DistanceEstimation metric = getDistanceEstimationByType(type);
+        // only one chunk is kept in memory, it is handed over in input order once all its pairs are estimated
+        for (int from = 0; from < pairs.size(); from += STREAM_CHUNK_SIZE) {
+            int to = Math.min(from + STREAM_CHUNK_SIZE, pairs.size());
+            chunkConsumer.accept(estimateDistances(metric, pairs.subList(from, to)));
+        }
+    }
+
+    public DistanceEstimate[][] estimateMatrix(ApproachType type, List<GeoLocation> sources, List<GeoLocation> targets) {
+        return estimateMatrix(getDistanceEstimationByType(type), sources, targets);
+    }
+
+    public VersionedMatrix estimateVersionedMatrix(ApproachType type, List<GeoLocation> sources,
+                                                   List<GeoLocation> targets) {
+        VersionedApproach approach = getVersionedApproach(type);
+        return new VersionedMatrix(approach.datasetVersion(), estimateMatrix(approach.metric(), sources, targets));
+    }
+
+    // the batch as a matrix with a single row
+    public VersionedMatrix estimateVersionedBatch(ApproachType type, List<LocationPair> pairs) {
+        VersionedApproach approach = getVersionedApproach(type);
+        DistanceEstimate[] row = estimateDistances(approach.metric(), pairs).stream()
+                .map(EstimationResult::distance).toArray(DistanceEstimate[]::new);
+        return new VersionedMatrix(approach.datasetVersion(), new DistanceEstimate[][]{row});
+    }
 
+    public void streamMatrix(ApproachType type, List<GeoLocation> sources, List<GeoLocation> targets,
+                             BiConsumer<Integer, DistanceEstimate[]> rowConsumer) {
+        DistanceEstimation metric = getDistanceEstimationByType(type);
+        // rows are processed in blocks of roughly STREAM_CHUNK_SIZE cells, so pairs are only deduplicated per block
+        int rowsPerBlock = Math.max(1, STREAM_CHUNK_SIZE / Math.max(1, targets.size()));
+        for (int from = 0; from < sources.size(); from += rowsPerBlock) {
+            int to = Math.min(from + rowsPerBlock, sources.size());
+            DistanceEstimate[][] block = estimateMatrix(metric, sources.subList(from, to), targets);
+            for (int i = 0; i < block.length; i++) {
+                rowConsumer.accept(from + i, block[i]);
+            }
+        }
+    }
+
+    private List<EstimationResult> estimateDistances(DistanceEstimation metric, List<LocationPair> pairs) {
+        if (virtualThreads && metric.getApproachType().isIoBound()) {
+            return estimateDistancesOnVirtualThreads(metric, pairs);
+        }
+
+        EstimationResult[] results = new EstimationResult[pairs.size()];
+        IntStream.range(0, pairs.size()).parallel().forEach(i -> {
+            LocationPair pair = pairs.get(i);
+            results[i] = estimateDistance(metric, pair.start(), pair.dest(), false);
+        });
+        return Arrays.asList(results);
+    }
+
+    private List<EstimationResult> estimateDistancesOnVirtualThreads(DistanceEstimation metric, List<LocationPair> pairs) {
+        // the common pool would only keep as many requests in flight as there are cores
+        EstimationResult[] results = new EstimationResult[pairs.size()];
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < pairs.size(); i++) {
+                int index = i;
+                executor.submit(() -> {
+                    LocationPair pair = pairs.get(index);
+                    ioPermits.acquireUninterruptibly();
+                    try {
+                        results[index] = estimateDistance(metric, pair.start(), pair.dest(), false);
+                    } finally {
+                        ioPermits.release();
+                    }
+                });
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private DistanceEstimate[][] estimateMatrix(DistanceEstimation metric, List<GeoLocation> sources, List<GeoLocation> targets) {
+        // all approaches treat (a, b) and (b, a) alike, hence every unordered pair is only estimated once
+        Map<LocationPair, Integer> uniquePairIndices = new HashMap<>();
+        List<LocationPair> uniquePairs = new ArrayList<>();
+        int[][] cells = new int[sources.size()][targets.size()];
+        for (int i = 0; i < sources.size(); i++) {
+            for (int j = 0; j < targets.size(); j++) {
+                LocationPair pair = canonicalPair(sources.get(i), targets.get(j));
+                Integer index = uniquePairIndices.get(pair);
+                if (index == null) {
+                    index = uniquePairs.size();
+                    uniquePairIndices.put(pair, index);
+                    uniquePairs.add(pair);
+                }
+                cells[i][j] = index;
+            }
+        }
+
+        List<EstimationResult> results = estimateDistances(metric, uniquePairs);
+
+        DistanceEstimate[][] matrix = new DistanceEstimate[sources.size()][targets.size()];
+        for (int i = 0; i < sources.size(); i++) {
+            for (int j = 0; j < targets.size(); j++) {
+                matrix[i][j] = results.get(cells[i][j]).distance();
+            }
+        }
+        return matrix;
+    }
+
+    private static LocationPair canonicalPair(GeoLocation start, GeoLocation dest) {
+        // same order as used by the approaches themselves
+        if (start.compareTo(dest) < 0) {
+            return new LocationPair(dest, start);
+        }
+        return new LocationPair(start, dest);
+    }
+
+    private EstimationResult estimateDistance(DistanceEstimation metric, GeoLocation start, GeoLocation destination, boolean includePath) {
+        return estimateDistance(metric, start, destination, includePath, QueryContext.NONE);
+    }
+
+    private EstimationResult estimateDistance(DistanceEstimation metric, GeoLocation start, GeoLocation destination,
+                                              boolean includePath, QueryContext context) {
+        // paths are neither cached nor quantized
+        if (includePath) {
+            return estimateDistanceCoalesced(metric, start, destination, true, context);
+        }
+
+        long datasetVersion = datasetVersionOf(metric);
+        EstimationResult cached = cacheService.get(metric.getApproachType(), datasetVersion, start, destination);
+        if (cached != null) {
+            return withEndpoints(cached, start, destination);
+        }
+        EstimationResult result = estimateDistanceCoalesced(metric, start, destination, false, context);
+        cacheService.put(metric.getApproachType(), datasetVersion, start, destination, result);
+        return result;
+    }
+
+    private EstimationResult estimateDistanceCoalesced(DistanceEstimation metric, GeoLocation start, GeoLocation destination,
+                                                       boolean includePath, QueryContext context) {
+        InFlightQuery query = InFlightQuery.of(metric.getApproachType(), datasetVersionOf(metric), start, destination,
+                includePath);
+        CompletableFuture<EstimationResult> own = new CompletableFuture<>();
+        CompletableFuture<EstimationResult> running = inFlight.putIfAbsent(query, own);
+        if (running != null) {
+            return withEndpoints(running.join(), start, destination);
+        }
+
+        try {
+            EstimationResult result = computeDistance(metric, start, destination, includePath, context);
+            own.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(query, own);
+        }
+    }
+
+    private static EstimationResult withEndpoints(EstimationResult shared, GeoLocation start, GeoLocation destination) {
+        return new EstimationResult(shared.metric(), start, destination, shared.result(), shared.resultCircuity(),
+                shared.timeNs(), shared.path(), shared.failed(), shared.errorMsg());
+    }
+
+    private EstimationResult computeDistance(DistanceEstimation metric, GeoLocation start, GeoLocation destination,
+                                             boolean includePath, QueryContext context) {
         // Ignore this for average time, just for Debug, Path and initial Delay
         Debug.message("\n----- Calculate " + metric.getApproachType().toString() + "-----");
         DurationTimer timer = new DurationTimer(true);
-        DistanceEstimate anyResult;
+        ApproachResult approachResult;
         try {
-            anyResult = metric.estimateDistance(start, destination);
+            approachResult = metric.estimate(start, destination, includePath, context);
         } catch (Exception e) {
-
-            return new EstimationResult(metric, start, destination, null, null, -1, null,
-                    true, e.getMessage());
+            return failedResult(metric, start, destination, e);
         }
 
         timer.stop();
+        return toEstimationResult(metric, start, destination, approachResult, timer.getDuration());
+    }
 
-        DistanceEstimate resultCircuity;
-        if (metric.getApproachType() == ApproachType.WATER_GRAPH_CIRCUITY) {
-            resultCircuity = anyResult;
-        } else if (metric.getApproachType() == ApproachType.WATER_GRAPH) {
-            resultCircuity = null;
-        } else if (metric.getApproachType().isOwnApproach()) {
-            DirectLineEstimation own = (DirectLineEstimation) metric;
-            resultCircuity = own.getLastDistanceCircuity();
-        } else if (metric.getApproachType().isSimpleMetric()) {
-            resultCircuity = anyResult.multiply(DistanceEstimation.CIRCUITY_FACTOR_GERMANY);
-        } else {
-            resultCircuity = null;
-        }
+    private static EstimationResult failedResult(DistanceEstimation metric, GeoLocation start, GeoLocation destination,
+                                                 Throwable e) {
+        return new EstimationResult(metric, start, destination, null, null, -1, null,
+                true, e.getMessage());
+    }
 
-        Debug.message("Test concluded with result " + anyResult + " in " + timer.getDuration() + " ns, " +
-                timer.getDuration() / 1000000 + " ms.");
+    private static EstimationResult toEstimationResult(DistanceEstimation metric, GeoLocation start,
+                                                       GeoLocation destination, ApproachResult approachResult,
+                                                       long durationNs) {
+        DistanceEstimate anyResult = approachResult.distance();
+        DistanceEstimate resultCircuity = approachResult.distanceCircuity();
 
-        LineString path = includePath ? metric.getPath(start, destination) : null;
+        Debug.message("Test concluded with result " + anyResult + " in " + durationNs + " ns, " +
+                durationNs / 1000000 + " ms.");
 
         if (metric.getApproachType() == ApproachType.WATER_GRAPH_CIRCUITY) {
             anyResult = null;
         }
 
-        return new EstimationResult(metric, start, destination, anyResult, resultCircuity, timer.getDuration(), path,
-                false, "");
+        return new EstimationResult(metric, start, destination, anyResult, resultCircuity, durationNs,
+                approachResult.path(), false, "");
+    }
+
+    // distances together with the dataset version of the approach that computed them
+    public record VersionedMatrix(long datasetVersion, DistanceEstimate[][] distances) {
+    }
+
+    private record Approaches(long datasetVersion, Map<ApproachType, DistanceEstimation> byType) {
+    }
+
+    private record VersionedApproach(long datasetVersion, DistanceEstimation metric) {
+    }
+
+    // queries on different dataset versions are never shared
+    private record InFlightQuery(ApproachType type, long datasetVersion, GeoLocation start, GeoLocation dest,
+                                 boolean includePath) {
+        static InFlightQuery of(ApproachType type, long datasetVersion, GeoLocation start, GeoLocation dest,
+                                boolean includePath) {
+            // paths follow the requested direction, hence only path-less queries are shared with the reverse direction
+            if (!includePath) {
+                LocationPair pair = canonicalPair(start, dest);
+                return new InFlightQuery(type, datasetVersion, pair.start(), pair.dest(), false);
+            }
+            return new InFlightQuery(type, datasetVersion, start, dest, true);
+        }
     }
 
     public List<Cluster> cluster(ApproachType type, int k, List<GeoLocation> locations) {
         return KMeans.fit(locations, k, 10_000, getDistanceEstimationByType(type));
     }
+
+    public CompletableFuture<List<Cluster>> clusterAsync(ApproachType type, int k, List<GeoLocation> locations) {
+        return CompletableFuture.supplyAsync(() -> cluster(type, k, locations), computeExecutor);
+    }
 }
@@ -0,0 +1,82 @@
+package de.uniwuerzburg.distanceestimation.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import de.uniwuerzburg.distanceestimation.controllers.models.CacheStatsResponse;
+import de.uniwuerzburg.distanceestimation.estimation.ApproachType;
+import de.uniwuerzburg.distanceestimation.models.EstimationResult;
+import de.uniwuerzburg.distanceestimation.models.GeoLocation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+@Service
+public class EstimationCacheService {
+    private final Cache<CacheKey, EstimationResult> cache;
+    private final double scale;
+    private final PreprocessingService preprocessingService;
+
+    public EstimationCacheService(PreprocessingService preprocessingService,
+                                  @Value("${estimation.cache.maximum-size:100000}") long maximumSize,
+                                  @Value("${estimation.cache.precision:6}") int precision) {
+        this.preprocessingService = preprocessingService;
+        // a maximum size of 0 disables the cache
+        this.cache = maximumSize > 0 ? Caffeine.newBuilder().maximumSize(maximumSize).recordStats().build() : null;
+        this.scale = Math.pow(10, precision);
+    }
+
+    // the dataset version is the one of the data the approach instance was built from
+    public EstimationResult get(ApproachType type, long datasetVersion, GeoLocation start, GeoLocation dest) {
+        if (cache == null) {
+            return null;
+        }
+        return cache.getIfPresent(key(type, datasetVersion, start, dest));
+    }
+
+    public void put(ApproachType type, long datasetVersion, GeoLocation start, GeoLocation dest,
+                    EstimationResult result) {
+        // results of replaced data are not stored anymore
+        if (cache == null || result.failed() || datasetVersion != preprocessingService.getDatasetVersion()) {
+            return;
+        }
+        // a put racing with a reload may still land after invalidateAll, but its key is never looked up again
+        cache.put(key(type, datasetVersion, start, dest), result);
+    }
+
+    public CacheStatsResponse getStats() {
+        if (cache == null) {
+            return new CacheStatsResponse(false, 0, 0, 0, 0, 0);
+        }
+        CacheStats stats = cache.stats();
+        return new CacheStatsResponse(true, cache.estimatedSize(), stats.hitCount(), stats.missCount(),
+                stats.hitRate(), stats.evictionCount());
+    }
+
+    @EventListener
+    public void onPreprocessingReloaded(PreprocessingReloadedEvent event) {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    private CacheKey key(ApproachType type, long datasetVersion, GeoLocation start, GeoLocation dest) {
+        start = quantize(start);
+        dest = quantize(dest);
+        // same order as used by the approaches themselves
+        if (start.compareTo(dest) < 0) {
+            var tmp = start;
+            start = dest;
+            dest = tmp;
+        }
+        return new CacheKey(type, datasetVersion, start, dest);
+    }
+
+    private GeoLocation quantize(GeoLocation location) {
+        return new GeoLocation(Math.round(location.getLat() * scale) / scale,
+                Math.round(location.getLon() * scale) / scale);
+    }
+
+    private record CacheKey(ApproachType type, long datasetVersion, GeoLocation start, GeoLocation dest) {
+    }
+}
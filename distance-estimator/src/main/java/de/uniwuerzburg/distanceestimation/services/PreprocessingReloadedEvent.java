@@ -0,0 +1,5 @@
+package de.uniwuerzburg.distanceestimation.services;
+
+// published after the preprocessing data was replaced, everything derived from the old data has to be discarded
+public record PreprocessingReloadedEvent(long datasetVersion) {
+}
@@ -6,6 +6,8 @@ import de.uniwuerzburg.distanceestimation.preprocessing.BridgeRoutePreprocessing
 import de.uniwuerzburg.distanceestimation.preprocessing.OverheadGraphPreprocessing;
 import de.uniwuerzburg.distanceestimation.preprocessing.WaterGraphPreprocessing;
 import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
@@ -14,22 +16,59 @@ import java.util.stream.Stream;
 
 @Service
 public class PreprocessingService {
-    private final WaterGraphPreprocessing waterGraphPreprocessing = new WaterGraphPreprocessing(false);
-    private final BridgeRoutePreprocessing bridgeRoutePreprocessing = new BridgeRoutePreprocessing();
-    private final Map<Integer, OverheadGraphPreprocessing> overheadGraphPreprocessingMap = new HashMap<>();
+    private volatile WaterGraphPreprocessing waterGraphPreprocessing;
+    private volatile BridgeRoutePreprocessing bridgeRoutePreprocessing;
+    private volatile Map<Integer, OverheadGraphPreprocessing> overheadGraphPreprocessingMap;
+    // time in epoch milliseconds the preprocessing finished, allows clients to detect changed data
+    private volatile long datasetVersion;
+    private final boolean virtualThreads;
+    private final int maxConcurrentIoRequests;
+    private final int maxOverlays;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public PreprocessingService(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                                @Value("${estimation.io.max-concurrent-requests:256}") int maxConcurrentIoRequests,
+                                @Value("${estimation.water-graph.max-overlays:0}") int maxOverlays,
+                                ApplicationEventPublisher eventPublisher) {
+        this.virtualThreads = virtualThreads;
+        this.maxConcurrentIoRequests = maxConcurrentIoRequests;
+        this.maxOverlays = maxOverlays;
+        this.eventPublisher = eventPublisher;
+    }
 
     @PostConstruct
     void initialize() {
         // ensure that Factory is initialized
         Factory.FACTORY.getSRID();
+        load();
+    }
+
+    // replaces all preprocessing data, e.g. after the files on disk were updated
+    public synchronized long reload() {
+        load();
+        eventPublisher.publishEvent(new PreprocessingReloadedEvent(datasetVersion));
+        return datasetVersion;
+    }
+
+    private void load() {
+        BridgeRoutePreprocessing bridgeRoutePreprocessing = new BridgeRoutePreprocessing();
         bridgeRoutePreprocessing.preprocessing();
+        WaterGraphPreprocessing waterGraphPreprocessing = new WaterGraphPreprocessing(false, maxOverlays);
         waterGraphPreprocessing.preprocessing(new EuclideanDistance());
 
+        Map<Integer, OverheadGraphPreprocessing> overheadGraphPreprocessingMap = new HashMap<>();
         Stream.of(1024, 512, 256, 128).forEach(n -> {
-            OverheadGraphPreprocessing result = new OverheadGraphPreprocessing(n);
+            OverheadGraphPreprocessing result = new OverheadGraphPreprocessing(n, virtualThreads,
+                    maxConcurrentIoRequests);
             result.preprocessing();
             overheadGraphPreprocessingMap.put(n, result);
         });
+
+        this.bridgeRoutePreprocessing = bridgeRoutePreprocessing;
+        this.waterGraphPreprocessing = waterGraphPreprocessing;
+        this.overheadGraphPreprocessingMap = overheadGraphPreprocessingMap;
+        // strictly increasing, even for reloads within the same millisecond
+        datasetVersion = Math.max(System.currentTimeMillis(), datasetVersion + 1);
     }
 
     public WaterGraphPreprocessing getWaterGraphPreprocessing() {
@@ -43,4 +82,8 @@ public class PreprocessingService {
     public OverheadGraphPreprocessing getOverheadGraphPreprocessing(int n_points) {
         return overheadGraphPreprocessingMap.get(n_points);
     }
+
+    public long getDatasetVersion() {
+        return datasetVersion;
+    }
 }
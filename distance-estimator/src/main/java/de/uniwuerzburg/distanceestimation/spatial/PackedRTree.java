@@ -0,0 +1,166 @@
+package de.uniwuerzburg.distanceestimation.spatial;
+
+import org.locationtech.jts.geom.Envelope;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/*
+ * Immutable R-tree packed bottom-up: the items are sorted along a Hilbert curve through the centers of their bounding
+ * boxes and every NODE_SIZE consecutive entries of a level form one node of the next level. All bounding boxes are kept
+ * in flat arrays, level after level, hence a search walks arrays only and does not allocate anything.
+ */
+public final class PackedRTree<T> {
+    private static final int NODE_SIZE = 16;
+    private static final int HILBERT_BITS = 15;
+
+    private final T[] items;
+    // bounding boxes of all levels, leaves (one per item) first, the root last
+    private final double[] minX;
+    private final double[] minY;
+    private final double[] maxX;
+    private final double[] maxY;
+    // first index of every level in the bounding box arrays, the last entry is the total count
+    private final int[] levelOffsets;
+
+    public interface Visitor<T> {
+        // returns false to stop the search
+        boolean visit(T item);
+    }
+
+    private PackedRTree(T[] items, double[] minX, double[] minY, double[] maxX, double[] maxY, int[] levelOffsets) {
+        this.items = items;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.levelOffsets = levelOffsets;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PackedRTree<T> build(List<T> items, Function<? super T, Envelope> envelope) {
+        int n = items.size();
+        Envelope[] envelopes = new Envelope[n];
+        Envelope extent = new Envelope();
+        for (int i = 0; i < n; i++) {
+            envelopes[i] = envelope.apply(items.get(i));
+            extent.expandToInclude(envelopes[i]);
+        }
+
+        // hilbert value in the upper, item index in the lower bits
+        long[] order = new long[n];
+        double cells = (1 << HILBERT_BITS) - 1;
+        double width = extent.getWidth() == 0 ? 1 : extent.getWidth();
+        double height = extent.getHeight() == 0 ? 1 : extent.getHeight();
+        for (int i = 0; i < n; i++) {
+            Envelope e = envelopes[i];
+            int x = (int) (cells * ((e.getMinX() + e.getMaxX()) / 2 - extent.getMinX()) / width);
+            int y = (int) (cells * ((e.getMinY() + e.getMaxY()) / 2 - extent.getMinY()) / height);
+            order[i] = ((long) hilbert(x, y) << 32) | i;
+        }
+        Arrays.sort(order);
+
+        int levelCount = 1;
+        for (int count = n; count > 1; count = (count + NODE_SIZE - 1) / NODE_SIZE) {
+            levelCount++;
+        }
+        int[] levelOffsets = new int[levelCount + 1];
+        int count = n;
+        for (int level = 0; level < levelCount; level++) {
+            levelOffsets[level + 1] = levelOffsets[level] + count;
+            count = Math.max(1, (count + NODE_SIZE - 1) / NODE_SIZE);
+        }
+
+        int total = levelOffsets[levelCount];
+        double[] minX = new double[total];
+        double[] minY = new double[total];
+        double[] maxX = new double[total];
+        double[] maxY = new double[total];
+        T[] sortedItems = (T[]) new Object[n];
+        for (int i = 0; i < n; i++) {
+            int item = (int) order[i];
+            sortedItems[i] = items.get(item);
+            minX[i] = envelopes[item].getMinX();
+            minY[i] = envelopes[item].getMinY();
+            maxX[i] = envelopes[item].getMaxX();
+            maxY[i] = envelopes[item].getMaxY();
+        }
+        for (int level = 1; level < levelCount; level++) {
+            int childOffset = levelOffsets[level - 1];
+            int childCount = levelOffsets[level] - childOffset;
+            for (int node = levelOffsets[level]; node < levelOffsets[level + 1]; node++) {
+                int first = childOffset + (node - levelOffsets[level]) * NODE_SIZE;
+                int last = Math.min(first + NODE_SIZE, childOffset + childCount);
+                minX[node] = Double.POSITIVE_INFINITY;
+                minY[node] = Double.POSITIVE_INFINITY;
+                maxX[node] = Double.NEGATIVE_INFINITY;
+                maxY[node] = Double.NEGATIVE_INFINITY;
+                for (int child = first; child < last; child++) {
+                    minX[node] = Math.min(minX[node], minX[child]);
+                    minY[node] = Math.min(minY[node], minY[child]);
+                    maxX[node] = Math.max(maxX[node], maxX[child]);
+                    maxY[node] = Math.max(maxY[node], maxY[child]);
+                }
+            }
+        }
+        return new PackedRTree<>(sortedItems, minX, minY, maxX, maxY, levelOffsets);
+    }
+
+    public int size() {
+        return items.length;
+    }
+
+    // visits all items whose bounding box intersects the envelope, returns false if the visitor stopped the search
+    public boolean search(Envelope envelope, Visitor<? super T> visitor) {
+        return search(envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY(), visitor);
+    }
+
+    public boolean search(double queryMinX, double queryMinY, double queryMaxX, double queryMaxY,
+                          Visitor<? super T> visitor) {
+        if (items.length == 0) {
+            return true;
+        }
+        int root = levelOffsets.length - 2;
+        return search(root, levelOffsets[root], queryMinX, queryMinY, queryMaxX, queryMaxY, visitor);
+    }
+
+    private boolean search(int level, int node, double queryMinX, double queryMinY, double queryMaxX,
+                           double queryMaxY, Visitor<? super T> visitor) {
+        if (queryMinX > maxX[node] || queryMaxX < minX[node] || queryMinY > maxY[node] || queryMaxY < minY[node]) {
+            return true;
+        }
+        if (level == 0) {
+            return visitor.visit(items[node]);
+        }
+        int first = levelOffsets[level - 1] + (node - levelOffsets[level]) * NODE_SIZE;
+        int last = Math.min(first + NODE_SIZE, levelOffsets[level]);
+        for (int child = first; child < last; child++) {
+            if (!search(level - 1, child, queryMinX, queryMinY, queryMaxX, queryMaxY, visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // position of (x, y) on the hilbert curve through a grid of 2^HILBERT_BITS cells per axis
+    private static int hilbert(int x, int y) {
+        int n = 1 << HILBERT_BITS;
+        int d = 0;
+        for (int s = n / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                int tmp = x;
+                x = y;
+                y = tmp;
+            }
+        }
+        return d;
+    }
+}
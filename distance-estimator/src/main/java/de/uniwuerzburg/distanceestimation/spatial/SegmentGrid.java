@@ -0,0 +1,244 @@
+package de.uniwuerzburg.distanceestimation.spatial;
+
+import de.uniwuerzburg.distanceestimation.models.mapInfo.WaterArea;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/*
+ * Uniform grid over the single boundary segments of all water areas. A segment is stored in every cell its bounding
+ * box (slightly enlarged) overlaps. A search walks the cells a query segment passes through (DDA traversal) and visits
+ * the boundary segments stored there, hence a long diagonal line only visits the boundaries along it instead of all
+ * water areas within its bounding box. Segments spanning several cells are visited once per cell.
+ *
+ * The cells are stored as one array of segment indexes with offsets per cell.
+ */
+public final class SegmentGrid {
+    // average number of segments per cell the resolution aims for
+    private static final int SEGMENTS_PER_CELL = 4;
+    private static final int MAX_CELLS_PER_AXIS = 4096;
+    // segments are stored in the neighbouring cells as well if they end this close (relative to a cell) to them
+    private static final double CELL_TOLERANCE = 1e-9;
+
+    private final double minX;
+    private final double minY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+    private final int[] cellOffsets;
+    private final int[] cellSegments;
+
+    private final Coordinate[] segmentStarts;
+    private final Coordinate[] segmentEnds;
+    // id of the water area of every segment
+    private final int[] segmentAreas;
+
+    public interface SegmentVisitor {
+        void visit(int area, Coordinate q0, Coordinate q1);
+    }
+
+    private SegmentGrid(Envelope extent, int columns, int rows, Coordinate[] segmentStarts, Coordinate[] segmentEnds,
+                        int[] segmentAreas) {
+        this.minX = extent.getMinX();
+        this.minY = extent.getMinY();
+        this.cellWidth = extent.getWidth() / columns;
+        this.cellHeight = extent.getHeight() / rows;
+        this.columns = columns;
+        this.rows = rows;
+        this.segmentStarts = segmentStarts;
+        this.segmentEnds = segmentEnds;
+        this.segmentAreas = segmentAreas;
+
+        // count the segments per cell first, then store them
+        this.cellOffsets = new int[columns * rows + 1];
+        for (int s = 0; s < segmentAreas.length; s++) {
+            forEachCell(s, cell -> cellOffsets[cell + 1]++);
+        }
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellOffsets[cell + 1] += cellOffsets[cell];
+        }
+        this.cellSegments = new int[cellOffsets[columns * rows]];
+        int[] next = new int[columns * rows];
+        System.arraycopy(cellOffsets, 0, next, 0, next.length);
+        for (int s = 0; s < segmentAreas.length; s++) {
+            int segment = s;
+            forEachCell(s, cell -> cellSegments[next[cell]++] = segment);
+        }
+    }
+
+    // indexes the boundaries of the given geometries of the water areas, the areas must have ids
+    public static SegmentGrid build(Collection<WaterArea> waterAreas, Function<WaterArea, Geometry> geometry) {
+        List<Coordinate> starts = new ArrayList<>();
+        List<Coordinate> ends = new ArrayList<>();
+        List<Integer> areas = new ArrayList<>();
+        Envelope extent = new Envelope();
+        for (WaterArea w : waterAreas) {
+            if (w.getId() < 0) {
+                throw new IllegalArgumentException("Water area without id: " + w.getName());
+            }
+            Geometry g = geometry.apply(w);
+            extent.expandToInclude(g.getEnvelopeInternal());
+            addSegments(g, w.getId(), starts, ends, areas);
+        }
+        if (extent.isNull()) {
+            extent = new Envelope(0, 1, 0, 1);
+        }
+        extent = new Envelope(extent.getMinX(), Math.max(extent.getMaxX(), extent.getMinX() + 1e-9),
+                extent.getMinY(), Math.max(extent.getMaxY(), extent.getMinY() + 1e-9));
+
+        // square cells, roughly SEGMENTS_PER_CELL segments per cell
+        double cellSize = Math.sqrt(extent.getArea() * SEGMENTS_PER_CELL / Math.max(1, starts.size()));
+        int columns = (int) Math.clamp(Math.ceil(extent.getWidth() / cellSize), 1, MAX_CELLS_PER_AXIS);
+        int rows = (int) Math.clamp(Math.ceil(extent.getHeight() / cellSize), 1, MAX_CELLS_PER_AXIS);
+        return new SegmentGrid(extent, columns, rows, starts.toArray(new Coordinate[0]), ends.toArray(new Coordinate[0]),
+                areas.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public int getSegmentCount() {
+        return segmentAreas.length;
+    }
+
+    /*
+     * Visits the boundary segments in all cells the segment p0 p1 passes through. Visited segments are candidates
+     * only, they do not necessarily intersect p0 p1.
+     */
+    public void search(Coordinate p0, Coordinate p1, SegmentVisitor visitor) {
+        double dx = p1.x - p0.x;
+        double dy = p1.y - p0.y;
+        double maxX = minX + columns * cellWidth;
+        double maxY = minY + rows * cellHeight;
+
+        // clip the segment to the grid
+        double tEnter = 0;
+        double tExit = 1;
+        if (dx == 0) {
+            if (p0.x < minX || p0.x > maxX) {
+                return;
+            }
+        } else {
+            double t0 = (minX - p0.x) / dx;
+            double t1 = (maxX - p0.x) / dx;
+            tEnter = Math.max(tEnter, Math.min(t0, t1));
+            tExit = Math.min(tExit, Math.max(t0, t1));
+        }
+        if (dy == 0) {
+            if (p0.y < minY || p0.y > maxY) {
+                return;
+            }
+        } else {
+            double t0 = (minY - p0.y) / dy;
+            double t1 = (maxY - p0.y) / dy;
+            tEnter = Math.max(tEnter, Math.min(t0, t1));
+            tExit = Math.min(tExit, Math.max(t0, t1));
+        }
+        if (tEnter > tExit) {
+            return;
+        }
+
+        int column = column(p0.x + tEnter * dx);
+        int row = row(p0.y + tEnter * dy);
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+        double tDeltaX = dx == 0 ? Double.POSITIVE_INFINITY : cellWidth / Math.abs(dx);
+        double tDeltaY = dy == 0 ? Double.POSITIVE_INFINITY : cellHeight / Math.abs(dy);
+        double tMaxX = dx == 0 ? Double.POSITIVE_INFINITY
+                : ((minX + (column + (dx > 0 ? 1 : 0)) * cellWidth) - p0.x) / dx;
+        double tMaxY = dy == 0 ? Double.POSITIVE_INFINITY
+                : ((minY + (row + (dy > 0 ? 1 : 0)) * cellHeight) - p0.y) / dy;
+
+        while (true) {
+            visitCell(row * columns + column, visitor);
+            double t = Math.min(tMaxX, tMaxY);
+            if (t > tExit) {
+                return;
+            }
+            if (tMaxX < tMaxY) {
+                column += stepX;
+                tMaxX += tDeltaX;
+            } else if (tMaxY < tMaxX) {
+                row += stepY;
+                tMaxY += tDeltaY;
+            } else {
+                // exactly through a corner, the two cells beside it are visited as well
+                if (column + stepX >= 0 && column + stepX < columns) {
+                    visitCell(row * columns + column + stepX, visitor);
+                }
+                if (row + stepY >= 0 && row + stepY < rows) {
+                    visitCell((row + stepY) * columns + column, visitor);
+                }
+                column += stepX;
+                row += stepY;
+                tMaxX += tDeltaX;
+                tMaxY += tDeltaY;
+            }
+            if (column < 0 || column >= columns || row < 0 || row >= rows) {
+                return;
+            }
+        }
+    }
+
+    private void visitCell(int cell, SegmentVisitor visitor) {
+        for (int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; i++) {
+            int s = cellSegments[i];
+            visitor.visit(segmentAreas[s], segmentStarts[s], segmentEnds[s]);
+        }
+    }
+
+    private void forEachCell(int segment, CellConsumer consumer) {
+        Coordinate a = segmentStarts[segment];
+        Coordinate b = segmentEnds[segment];
+        int firstColumn = column(Math.min(a.x, b.x) - CELL_TOLERANCE * cellWidth);
+        int lastColumn = column(Math.max(a.x, b.x) + CELL_TOLERANCE * cellWidth);
+        int firstRow = row(Math.min(a.y, b.y) - CELL_TOLERANCE * cellHeight);
+        int lastRow = row(Math.max(a.y, b.y) + CELL_TOLERANCE * cellHeight);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                consumer.accept(row * columns + column);
+            }
+        }
+    }
+
+    private int column(double x) {
+        return (int) Math.clamp(Math.floor((x - minX) / cellWidth), 0, columns - 1);
+    }
+
+    private int row(double y) {
+        return (int) Math.clamp(Math.floor((y - minY) / cellHeight), 0, rows - 1);
+    }
+
+    private static void addSegments(Geometry geometry, int area, List<Coordinate> starts, List<Coordinate> ends,
+                                    List<Integer> areas) {
+        if (geometry instanceof Polygon polygon) {
+            addSegments(polygon.getExteriorRing(), area, starts, ends, areas);
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                addSegments(polygon.getInteriorRingN(i), area, starts, ends, areas);
+            }
+        } else if (geometry instanceof LineString lineString) {
+            CoordinateSequence sequence = lineString.getCoordinateSequence();
+            for (int i = 1; i < sequence.size(); i++) {
+                starts.add(sequence.getCoordinate(i - 1));
+                ends.add(sequence.getCoordinate(i));
+                areas.add(area);
+            }
+        } else {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                if (geometry.getGeometryN(i) != geometry) {
+                    addSegments(geometry.getGeometryN(i), area, starts, ends, areas);
+                }
+            }
+        }
+    }
+
+    private interface CellConsumer {
+        void accept(int cell);
+    }
+}
@@ -0,0 +1,199 @@
+package de.uniwuerzburg.distanceestimation.spatial;
+
+import de.uniwuerzburg.distanceestimation.models.Factory;
+import de.uniwuerzburg.distanceestimation.models.mapInfo.WaterArea;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/*
+ * Quadtree raster of the water areas: every cell is either free of water, completely covered by a single water area or
+ * on a boundary. Boundary cells are split into four until MAX_DEPTH. A direct line that only passes through cells
+ * without water can not intersect any water area, a line passing through a completely covered cell always does. Only
+ * the remaining lines need the exact geometries.
+ *
+ * The cells are stored in flat arrays, the four children of a cell are consecutive.
+ */
+public final class WaterRaster {
+    private static final int MAX_DEPTH = 10;
+    // cells are enlarged by this (relative to their size) for queries, so rounding never skips a cell with water
+    private static final double CELL_TOLERANCE = 1e-9;
+    // a line has to run at least this far (relative to its length) through a covered cell to surely cross water
+    private static final double PARAMETER_TOLERANCE = 1e-9;
+
+    private static final byte NO_WATER_CELL = 0;
+    private static final byte ALL_WATER_CELL = 1;
+    private static final byte BOUNDARY_CELL = 2;
+    private static final byte SPLIT_CELL = 3;
+
+    public enum Coverage {
+        // the line does not intersect any water area
+        NO_WATER,
+        // the line runs through a water area
+        ALL_WATER,
+        // only the exact geometries tell
+        BOUNDARY
+    }
+
+    private final Envelope extent;
+    private final byte[] states;
+    // index of the first child of split cells
+    private final int[] firstChildren;
+
+    private WaterRaster(Envelope extent, byte[] states, int[] firstChildren) {
+        this.extent = extent;
+        this.states = states;
+        this.firstChildren = firstChildren;
+    }
+
+    public static WaterRaster build(Collection<WaterArea> waterAreas, Function<WaterArea, PreparedGeometry> geometry) {
+        Envelope extent = new Envelope();
+        List<PreparedGeometry> areas = new ArrayList<>(waterAreas.size());
+        for (WaterArea w : waterAreas) {
+            PreparedGeometry area = geometry.apply(w);
+            extent.expandToInclude(area.getGeometry().getEnvelopeInternal());
+            areas.add(area);
+        }
+        if (extent.isNull()) {
+            extent = new Envelope(0, 1, 0, 1);
+        }
+        Builder builder = new Builder();
+        builder.add();
+        builder.build(0, extent, 0, areas);
+        return new WaterRaster(extent, Arrays.copyOf(builder.states, builder.size),
+                Arrays.copyOf(builder.firstChildren, builder.size));
+    }
+
+    public int getCellCount() {
+        return states.length;
+    }
+
+    public Coverage coverage(Coordinate p0, Coordinate p1) {
+        byte state = coverage(0, extent.getMinX(), extent.getMinY(), extent.getMaxX(), extent.getMaxY(), p0, p1);
+        return switch (state) {
+            case NO_WATER_CELL -> Coverage.NO_WATER;
+            case ALL_WATER_CELL -> Coverage.ALL_WATER;
+            default -> Coverage.BOUNDARY;
+        };
+    }
+
+    // most significant state of the cells the line passes through: covered before boundary before free of water
+    private byte coverage(int cell, double minX, double minY, double maxX, double maxY, Coordinate p0, Coordinate p1) {
+        double toleranceX = CELL_TOLERANCE * (maxX - minX);
+        double toleranceY = CELL_TOLERANCE * (maxY - minY);
+        if (clippedLength(p0, p1, minX - toleranceX, minY - toleranceY, maxX + toleranceX, maxY + toleranceY) < 0) {
+            return NO_WATER_CELL;
+        }
+        byte state = states[cell];
+        if (state == ALL_WATER_CELL) {
+            return clippedLength(p0, p1, minX, minY, maxX, maxY) > PARAMETER_TOLERANCE ? ALL_WATER_CELL : BOUNDARY_CELL;
+        }
+        if (state != SPLIT_CELL) {
+            return state;
+        }
+
+        double midX = (minX + maxX) / 2;
+        double midY = (minY + maxY) / 2;
+        int child = firstChildren[cell];
+        byte result = NO_WATER_CELL;
+        for (int quadrant = 0; quadrant < 4 && result != ALL_WATER_CELL; quadrant++) {
+            byte childState = coverage(child + quadrant,
+                    (quadrant & 1) == 0 ? minX : midX, (quadrant & 2) == 0 ? minY : midY,
+                    (quadrant & 1) == 0 ? midX : maxX, (quadrant & 2) == 0 ? midY : maxY, p0, p1);
+            if (childState == ALL_WATER_CELL || childState == BOUNDARY_CELL) {
+                result = childState;
+            }
+        }
+        return result;
+    }
+
+    // length of the part of the segment p0 p1 within the rectangle, relative to the segment, negative if none
+    private static double clippedLength(Coordinate p0, Coordinate p1, double minX, double minY, double maxX,
+                                        double maxY) {
+        double dx = p1.x - p0.x;
+        double dy = p1.y - p0.y;
+        double tEnter = 0;
+        double tExit = 1;
+        if (dx == 0) {
+            if (p0.x < minX || p0.x > maxX) {
+                return -1;
+            }
+        } else {
+            double t0 = (minX - p0.x) / dx;
+            double t1 = (maxX - p0.x) / dx;
+            tEnter = Math.max(tEnter, Math.min(t0, t1));
+            tExit = Math.min(tExit, Math.max(t0, t1));
+        }
+        if (dy == 0) {
+            if (p0.y < minY || p0.y > maxY) {
+                return -1;
+            }
+        } else {
+            double t0 = (minY - p0.y) / dy;
+            double t1 = (maxY - p0.y) / dy;
+            tEnter = Math.max(tEnter, Math.min(t0, t1));
+            tExit = Math.min(tExit, Math.max(t0, t1));
+        }
+        return tExit - tEnter;
+    }
+
+    private static final class Builder {
+        private byte[] states = new byte[64];
+        private int[] firstChildren = new int[64];
+        private int size;
+
+        private int add() {
+            if (size == states.length) {
+                states = Arrays.copyOf(states, size * 2);
+                firstChildren = Arrays.copyOf(firstChildren, size * 2);
+            }
+            firstChildren[size] = -1;
+            return size++;
+        }
+
+        // the areas are the ones intersecting the parent cell
+        private void build(int cell, Envelope envelope, int depth, List<PreparedGeometry> areas) {
+            Geometry rectangle = Factory.FACTORY.toGeometry(envelope);
+            List<PreparedGeometry> intersecting = new ArrayList<>();
+            for (PreparedGeometry area : areas) {
+                if (area.covers(rectangle)) {
+                    states[cell] = ALL_WATER_CELL;
+                    return;
+                }
+                if (area.intersects(rectangle)) {
+                    intersecting.add(area);
+                }
+            }
+            if (intersecting.isEmpty()) {
+                states[cell] = NO_WATER_CELL;
+                return;
+            }
+            if (depth == MAX_DEPTH) {
+                states[cell] = BOUNDARY_CELL;
+                return;
+            }
+
+            states[cell] = SPLIT_CELL;
+            int child = add();
+            add();
+            add();
+            add();
+            firstChildren[cell] = child;
+            double midX = (envelope.getMinX() + envelope.getMaxX()) / 2;
+            double midY = (envelope.getMinY() + envelope.getMaxY()) / 2;
+            for (int quadrant = 0; quadrant < 4; quadrant++) {
+                build(child + quadrant, new Envelope(
+                        (quadrant & 1) == 0 ? envelope.getMinX() : midX, (quadrant & 1) == 0 ? midX : envelope.getMaxX(),
+                        (quadrant & 2) == 0 ? envelope.getMinY() : midY, (quadrant & 2) == 0 ? midY : envelope.getMaxY()),
+                        depth + 1, intersecting);
+            }
+        }
+    }
+}
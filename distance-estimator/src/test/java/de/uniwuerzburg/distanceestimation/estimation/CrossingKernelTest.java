@@ -0,0 +1,137 @@
+package de.uniwuerzburg.distanceestimation.estimation;
+
+import de.uniwuerzburg.distanceestimation.models.Factory;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.geom.util.LineStringExtracter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class CrossingKernelTest {
+    private static final double EPSILON = 1e-9;
+
+    // 4 x 4 square with a 2 x 2 hole in the middle
+    private static final Geometry SQUARE_WITH_HOLE = Factory.FACTORY.createPolygon(
+            Factory.FACTORY.createLinearRing(coordinates(0, 0, 4, 0, 4, 4, 0, 4, 0, 0)),
+            new LinearRing[]{
+                    Factory.FACTORY.createLinearRing(coordinates(1, 1, 3, 1, 3, 3, 1, 3, 1, 1))});
+
+    @Test
+    public void firstAndLastPartAroundAHole() {
+        assertArrayEquals(new double[]{1 / 6.0, 2 / 6.0, 4 / 6.0, 5 / 6.0},
+                firstAndLastInside(-1, 2, 5, 2, SQUARE_WITH_HOLE), EPSILON);
+    }
+
+    @Test
+    public void boundaryBelongsToTheArea() {
+        assertArrayEquals(new double[]{1 / 6.0, 5 / 6.0, 1 / 6.0, 5 / 6.0},
+                firstAndLastInside(-1, 0, 5, 0, SQUARE_WITH_HOLE), EPSILON);
+    }
+
+    @Test
+    public void touchingAVertexIsNotInside() {
+        assertNull(firstAndLastInside(-1, 1, 1, -1, SQUARE_WITH_HOLE));
+        assertNull(firstAndLastInside(5, 5, 6, 6, SQUARE_WITH_HOLE));
+        assertNull(firstAndLastInside(1.5, 1.5, 2.5, 2.5, SQUARE_WITH_HOLE));
+    }
+
+    /*
+     * Random star-shaped polygons, half of them with a hole, against the overlay of JTS. The overlay splits the
+     * intersection at boundary vertices and may keep parts of zero length, hence touching parts are merged and empty
+     * ones dropped before comparing.
+     */
+    @Test
+    public void randomPolygonsWithHolesEqualTheOverlay() {
+        Random random = new Random(3);
+        for (int t = 0; t < 5000; t++) {
+            int n = 4 + random.nextInt(30);
+            Coordinate[] ring = new Coordinate[n + 1];
+            for (int i = 0; i < n; i++) {
+                double angle = 2 * Math.PI * i / n;
+                double radius = 1 + random.nextDouble() * 3;
+                ring[i] = new Coordinate(round(radius * Math.cos(angle), 100), round(radius * Math.sin(angle), 100));
+            }
+            ring[n] = ring[0];
+            Geometry area = Factory.FACTORY.createPolygon(ring);
+            if (random.nextBoolean()) {
+                area = area.difference(Factory.FACTORY.createPoint(new Coordinate(0, 0)).buffer(0.5, 4));
+            }
+            Coordinate p0 = new Coordinate(round(random.nextDouble() * 10 - 5, 10), round(random.nextDouble() * 10 - 5, 10));
+            Coordinate p1 = new Coordinate(round(random.nextDouble() * 10 - 5, 10), round(random.nextDouble() * 10 - 5, 10));
+            if (p0.equals2D(p1)) {
+                continue;
+            }
+
+            double[] expected = overlayFirstAndLastInside(p0, p1, area);
+            double[] actual = CrossingKernel.firstAndLastInside(p0, p1, PreparedGeometryFactory.prepare(area));
+            String message = "line " + p0 + " " + p1 + " and " + area;
+            if (expected == null) {
+                assertNull(message, actual);
+            } else {
+                assertArrayEquals(message, expected, actual, EPSILON);
+            }
+        }
+    }
+
+    private static double[] overlayFirstAndLastInside(Coordinate p0, Coordinate p1, Geometry area) {
+        LineString line = Factory.FACTORY.createLineString(new Coordinate[]{p0, p1});
+        List<double[]> parts = new ArrayList<>();
+        for (Object part : LineStringExtracter.getLines(line.intersection(area))) {
+            Coordinate[] c = ((LineString) part).getCoordinates();
+            if (c.length == 0) {
+                continue;
+            }
+            double from = parameter(p0, p1, c[0]);
+            double to = parameter(p0, p1, c[c.length - 1]);
+            if (Math.abs(to - from) > EPSILON) {
+                parts.add(new double[]{Math.min(from, to), Math.max(from, to)});
+            }
+        }
+        if (parts.isEmpty()) {
+            return null;
+        }
+        parts.sort(Comparator.comparingDouble(part -> part[0]));
+        List<double[]> merged = new ArrayList<>();
+        for (double[] part : parts) {
+            if (!merged.isEmpty() && part[0] - merged.getLast()[1] < EPSILON) {
+                merged.getLast()[1] = Math.max(merged.getLast()[1], part[1]);
+            } else {
+                merged.add(part);
+            }
+        }
+        return new double[]{merged.getFirst()[0], merged.getFirst()[1], merged.getLast()[0], merged.getLast()[1]};
+    }
+
+    private static double[] firstAndLastInside(double x0, double y0, double x1, double y1, Geometry area) {
+        return CrossingKernel.firstAndLastInside(new Coordinate(x0, y0), new Coordinate(x1, y1),
+                PreparedGeometryFactory.prepare(area));
+    }
+
+    private static double parameter(Coordinate p0, Coordinate p1, Coordinate c) {
+        double dx = p1.x - p0.x;
+        double dy = p1.y - p0.y;
+        return ((c.x - p0.x) * dx + (c.y - p0.y) * dy) / (dx * dx + dy * dy);
+    }
+
+    private static double round(double value, double scale) {
+        return Math.round(value * scale) / scale;
+    }
+
+    private static Coordinate[] coordinates(double... xy) {
+        Coordinate[] coordinates = new Coordinate[xy.length / 2];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = new Coordinate(xy[2 * i], xy[2 * i + 1]);
+        }
+        return coordinates;
+    }
+}
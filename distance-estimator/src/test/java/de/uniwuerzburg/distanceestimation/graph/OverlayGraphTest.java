@@ -0,0 +1,290 @@
+package de.uniwuerzburg.distanceestimation.graph;
+
+import de.uniwuerzburg.distanceestimation.models.Factory;
+import de.uniwuerzburg.distanceestimation.models.GeoLocation;
+import de.uniwuerzburg.distanceestimation.models.mapInfo.Edge;
+import de.uniwuerzburg.distanceestimation.models.mapInfo.WaterArea;
+import org.jgrapht.GraphPath;
+import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class OverlayGraphTest {
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void shortestPathsOfRandomRingsEqualJGraphT() {
+        Random random = new Random(1);
+        for (int t = 0; t < 500; t++) {
+            // rings are drawn from few locations, hence they touch each other and themselves
+            List<GeoLocation> locations = new ArrayList<>();
+            for (int i = 0; i < 60; i++) {
+                locations.add(location(random.nextInt(50) / 10.0, random.nextInt(50) / 10.0));
+            }
+            Rings rings = new Rings(1.3);
+            while (rings.size() < 5) {
+                List<GeoLocation> ring = new ArrayList<>();
+                int length = 3 + random.nextInt(10);
+                for (int i = 0; i < length; i++) {
+                    GeoLocation l = locations.get(random.nextInt(locations.size()));
+                    if (ring.isEmpty() || !ring.getLast().equals(l)) {
+                        ring.add(l);
+                    }
+                }
+                if (ring.size() >= 3 && !ring.getFirst().equals(ring.getLast())) {
+                    rings.add(ring.toArray(new GeoLocation[0]));
+                }
+            }
+            WaterBoundaryGraph graph = rings.build();
+
+            // a previous query on the same (pooled) overlay must not leave anything behind
+            try (OverlayGraph previous = OverlayGraph.forQuery(graph)) {
+                for (int area = 0; area < rings.size(); area++) {
+                    previous.activateArea(area);
+                }
+                for (int i = 0; i < 20; i++) {
+                    previous.addEdge(location(-5 - i, 3), locations.get(random.nextInt(locations.size())), 0.001);
+                }
+                previous.shortestPath(location(-5, 3), locations.getFirst());
+            }
+
+            GeoLocation start = location(9, 9);
+            GeoLocation dest = location(-1, -1);
+            try (OverlayGraph overlay = OverlayGraph.forQuery(graph)) {
+                Reference reference = new Reference();
+                for (int area = 0; area < rings.size(); area++) {
+                    if (random.nextBoolean()) {
+                        overlay.activateArea(area);
+                        reference.addAll(rings.graph(area));
+                    }
+                }
+                reference.addVertex(start);
+                reference.addVertex(dest);
+                for (int i = 0; i < 8; i++) {
+                    GeoLocation a = random.nextBoolean() ? start : locations.get(random.nextInt(locations.size()));
+                    GeoLocation b = random.nextBoolean() ? dest : locations.get(random.nextInt(locations.size()));
+                    if (!a.equals(b)) {
+                        double weight = a.distance(b) * (0.8 + random.nextDouble());
+                        overlay.addEdge(a, b, weight);
+                        reference.addEdge(a, b, weight);
+                    }
+                }
+
+                double expected = reference.distance(start, dest);
+                double dijkstra = overlay.shortestPath(start, dest);
+                assertEquals("query " + t, expected, dijkstra, EPSILON);
+                if (dijkstra != Double.POSITIVE_INFINITY) {
+                    assertPath(reference, overlay.getLastPath(), start, dest, dijkstra);
+                }
+                double aStar = overlay.shortestPath(start, dest, true);
+                assertEquals("A* of query " + t, dijkstra, aStar, EPSILON);
+                if (aStar != Double.POSITIVE_INFINITY) {
+                    assertPath(reference, overlay.getLastPath(), start, dest, aStar);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void pathLeavesTheRingAtAPinchVertex() {
+        // two triangles touching at (2, 2), the ring visits it twice
+        Rings rings = new Rings(1);
+        rings.add(location(0, 0), location(4, 0), location(2, 2), location(4, 4), location(0, 4), location(2, 2));
+        WaterBoundaryGraph graph = rings.build();
+        GeoLocation start = location(5, -1);
+        GeoLocation dest = location(-1, 5);
+
+        try (OverlayGraph overlay = OverlayGraph.forQuery(graph)) {
+            overlay.activateArea(0);
+            overlay.addEdge(start, location(4, 0), 2);
+            overlay.addEdge(location(0, 4), dest, 3);
+
+            for (boolean goalDirected : new boolean[]{false, true}) {
+                assertEquals(5 + 4 * Math.sqrt(2), overlay.shortestPath(start, dest, goalDirected), EPSILON);
+                assertEquals(List.of(start, location(4, 0), location(2, 2), location(0, 4), dest),
+                        overlay.getLastPath());
+            }
+        }
+    }
+
+    @Test
+    public void ringsConnectedByASingleJunction() {
+        // two squares sharing the corner (2, 2)
+        Rings rings = new Rings(1);
+        rings.add(location(0, 0), location(2, 0), location(2, 2), location(0, 2));
+        rings.add(location(2, 2), location(4, 2), location(4, 4), location(2, 4));
+        WaterBoundaryGraph graph = rings.build();
+        GeoLocation start = location(-1, -1);
+        GeoLocation dest = location(5, 5);
+
+        try (OverlayGraph overlay = OverlayGraph.forQuery(graph)) {
+            overlay.activateArea(0);
+            overlay.activateArea(1);
+            overlay.addEdge(start, location(0, 0), 1);
+            overlay.addEdge(location(4, 4), dest, 1);
+
+            for (boolean goalDirected : new boolean[]{false, true}) {
+                assertEquals(10, overlay.shortestPath(start, dest, goalDirected), EPSILON);
+                List<GeoLocation> path = overlay.getLastPath();
+                assertTrue(path.contains(location(2, 2)));
+                assertPath(Reference.of(rings, start, location(0, 0), location(4, 4), dest), path, start, dest, 10);
+            }
+        }
+
+        // without the second area there is no way to the destination
+        try (OverlayGraph overlay = OverlayGraph.forQuery(graph)) {
+            overlay.activateArea(0);
+            overlay.addEdge(start, location(0, 0), 1);
+            overlay.addEdge(location(4, 4), dest, 1);
+
+            assertEquals(Double.POSITIVE_INFINITY, overlay.shortestPath(start, dest), 0);
+            assertTrue(overlay.getLastPath().isEmpty());
+        }
+    }
+
+    @Test
+    public void pathIsExpandedAcrossPositionZeroOfTheRing() {
+        // the shortest way between (0, 1) and (1, 0) runs over the first position of the ring
+        Rings rings = new Rings(1);
+        rings.add(location(0, 0), location(1, 0), location(5, 5), location(0, 1));
+        WaterBoundaryGraph graph = rings.build();
+        GeoLocation start = location(-1, 1);
+        GeoLocation dest = location(1, -1);
+
+        try (OverlayGraph overlay = OverlayGraph.forQuery(graph)) {
+            overlay.activateArea(0);
+            overlay.addEdge(start, location(0, 1), 1);
+            overlay.addEdge(location(1, 0), dest, 1);
+
+            for (boolean goalDirected : new boolean[]{false, true}) {
+                assertEquals(4, overlay.shortestPath(start, dest, goalDirected), EPSILON);
+                assertEquals(List.of(start, location(0, 1), location(0, 0), location(1, 0), dest),
+                        overlay.getLastPath());
+                assertEquals(4, overlay.shortestPath(dest, start, goalDirected), EPSILON);
+                assertEquals(List.of(dest, location(1, 0), location(0, 0), location(0, 1), start),
+                        overlay.getLastPath());
+            }
+        }
+    }
+
+    private static void assertPath(Reference reference, List<GeoLocation> path, GeoLocation start, GeoLocation dest,
+                                   double weight) {
+        assertEquals(start, path.getFirst());
+        assertEquals(dest, path.getLast());
+        double pathWeight = 0;
+        for (int i = 1; i < path.size(); i++) {
+            Edge e = reference.graph.getEdge(path.get(i - 1), path.get(i));
+            assertNotNull("no edge " + path.get(i - 1) + " " + path.get(i), e);
+            pathWeight += reference.graph.getEdgeWeight(e);
+        }
+        assertEquals(weight, pathWeight, EPSILON);
+    }
+
+    private static GeoLocation location(double x, double y) {
+        return new GeoLocation(y, x);
+    }
+
+    // water areas with one ring each, their ids are the order they were added in
+    private static final class Rings {
+        private final double weightPerDistance;
+        private final Map<WaterArea, SimpleWeightedGraph<GeoLocation, Edge>> graphs = new LinkedHashMap<>();
+        private final Map<WaterArea, List<LineString>> boundaries = new HashMap<>();
+        private final List<WaterArea> areas = new ArrayList<>();
+
+        private Rings(double weightPerDistance) {
+            this.weightPerDistance = weightPerDistance;
+        }
+
+        private void add(GeoLocation... ring) {
+            Coordinate[] coordinates = Arrays.copyOf(ring, ring.length + 1, Coordinate[].class);
+            coordinates[ring.length] = ring[0];
+            SimpleWeightedGraph<GeoLocation, Edge> graph = new SimpleWeightedGraph<>(Edge.class);
+            for (int i = 0; i < ring.length; i++) {
+                GeoLocation a = ring[i];
+                GeoLocation b = ring[(i + 1) % ring.length];
+                graph.addVertex(a);
+                graph.addVertex(b);
+                if (!graph.containsEdge(a, b)) {
+                    graph.setEdgeWeight(graph.addEdge(a, b), a.distance(b) * weightPerDistance);
+                }
+            }
+            Polygon polygon = Factory.FACTORY.createPolygon(coordinates);
+            WaterArea w = new WaterArea("ring " + areas.size(), polygon);
+            w.setId(areas.size());
+            areas.add(w);
+            graphs.put(w, graph);
+            boundaries.put(w, List.of(polygon.getExteriorRing()));
+        }
+
+        private int size() {
+            return areas.size();
+        }
+
+        private SimpleWeightedGraph<GeoLocation, Edge> graph(int area) {
+            return graphs.get(areas.get(area));
+        }
+
+        private WaterBoundaryGraph build() {
+            return WaterBoundaryGraph.build(graphs, boundaries, areas.size());
+        }
+    }
+
+    // the graph a query describes, as JGraphT graph
+    private static final class Reference {
+        private final SimpleWeightedGraph<GeoLocation, Edge> graph = new SimpleWeightedGraph<>(Edge.class);
+
+        // all areas and the given query edges (pairs of locations) with their straight-line distance as weight
+        private static Reference of(Rings rings, GeoLocation... queryEdges) {
+            Reference reference = new Reference();
+            for (int area = 0; area < rings.size(); area++) {
+                reference.addAll(rings.graph(area));
+            }
+            for (int i = 0; i < queryEdges.length; i += 2) {
+                reference.addEdge(queryEdges[i], queryEdges[i + 1], 1);
+            }
+            return reference;
+        }
+
+        private void addAll(SimpleWeightedGraph<GeoLocation, Edge> other) {
+            for (Edge e : other.edgeSet()) {
+                addEdge(other.getEdgeSource(e), other.getEdgeTarget(e), other.getEdgeWeight(e));
+            }
+        }
+
+        private void addVertex(GeoLocation v) {
+            graph.addVertex(v);
+        }
+
+        // parallel edges are merged to the lightest one
+        private void addEdge(GeoLocation a, GeoLocation b, double weight) {
+            graph.addVertex(a);
+            graph.addVertex(b);
+            Edge e = graph.getEdge(a, b);
+            if (e == null) {
+                graph.setEdgeWeight(graph.addEdge(a, b), weight);
+            } else if (graph.getEdgeWeight(e) > weight) {
+                graph.setEdgeWeight(e, weight);
+            }
+        }
+
+        private double distance(GeoLocation start, GeoLocation dest) {
+            GraphPath<GeoLocation, Edge> path = DijkstraShortestPath.findPathBetween(graph, start, dest);
+            return path == null ? Double.POSITIVE_INFINITY : path.getWeight();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package de.uniwuerzburg.distanceestimation.spatial;
+
+import de.uniwuerzburg.distanceestimation.models.Factory;
+import de.uniwuerzburg.distanceestimation.models.mapInfo.WaterArea;
+import org.junit.Test;
+import org.locationtech.jts.algorithm.LineIntersector;
+import org.locationtech.jts.algorithm.RobustLineIntersector;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineSegment;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertTrue;
+
+/*
+ * One diamond per cell of an 8 x 8 extent. The 64 segments make the grid 4 x 4 cells of size 2, the corners of every
+ * diamond lie on the edges of its cell (or on the corners of the cell), so its segments only span that cell.
+ */
+public class SegmentGridTest {
+    private static final double CELL = 2;
+
+    private final List<WaterArea> areas = new ArrayList<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private final SegmentGrid grid;
+
+    public SegmentGridTest() {
+        Random random = new Random(7);
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                double x = column * CELL;
+                double y = row * CELL;
+                Coordinate[] ring = {
+                        new Coordinate(x + offset(random), y),
+                        new Coordinate(x + CELL, y + offset(random)),
+                        new Coordinate(x + offset(random), y + CELL),
+                        new Coordinate(x, y + offset(random)),
+                        null};
+                ring[4] = ring[0];
+                WaterArea w = new WaterArea("diamond " + areas.size(), Factory.FACTORY.createPolygon(ring));
+                w.setId(areas.size());
+                areas.add(w);
+                for (int i = 1; i < ring.length; i++) {
+                    segments.add(new Segment(w.getId(), ring[i - 1], ring[i]));
+                }
+            }
+        }
+        grid = SegmentGrid.build(areas, WaterArea::getGeom);
+    }
+
+    @Test
+    public void linesAlongCellEdges() {
+        for (int k = 0; k <= 4; k++) {
+            double edge = k * CELL;
+            assertCandidates(-1, edge, 9, edge);
+            assertCandidates(9, edge, -1, edge);
+            assertCandidates(edge, -1, edge, 9);
+            assertCandidates(edge, 9, edge, -1);
+            // starting and ending on edges within the grid
+            assertCandidates(edge, 2, edge, 6);
+            assertCandidates(2, edge, 6, edge);
+            assertCandidates(edge, 3, edge, 5);
+        }
+    }
+
+    @Test
+    public void linesThroughCellCorners() {
+        for (int k = -4; k <= 4; k++) {
+            double shift = k * CELL;
+            assertCandidates(-1 + shift, -1, 9 + shift, 9);
+            assertCandidates(9 + shift, 9, -1 + shift, -1);
+            assertCandidates(-1 + shift, 9, 9 + shift, -1);
+            assertCandidates(9 + shift, -1, -1 + shift, 9);
+        }
+        // starting or ending exactly at a corner
+        assertCandidates(2, 2, 6, 6);
+        assertCandidates(2, 2, 3, 7);
+        assertCandidates(5, 1, 4, 4);
+        // steeper lines through corners, e.g. (0, 0), (2, 4) and (4, 8)
+        assertCandidates(0, 0, 4, 8);
+        assertCandidates(8, 0, 0, 4);
+    }
+
+    @Test
+    public void linesOutsideTheExtent() {
+        assertNoCandidates(-2, -2, -1, 5);
+        assertNoCandidates(9, 0, 10, 8);
+        assertNoCandidates(-1, 9, 9, 10);
+        assertNoCandidates(-3, 4, 1, 12);
+        // entering and leaving the extent
+        assertCandidates(-3, 4, 4, -3);
+        assertCandidates(-5, 3, 12, 5);
+        assertCandidates(4, -5, 4.5, 13);
+    }
+
+    @Test
+    public void randomLinesOnTheLattice() {
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            double x0 = latticeCoordinate(random);
+            double y0 = latticeCoordinate(random);
+            double x1 = random.nextInt(5) == 0 ? x0 : latticeCoordinate(random);
+            double y1 = random.nextInt(5) == 0 ? y0 : latticeCoordinate(random);
+            if (x0 != x1 || y0 != y1) {
+                assertCandidates(x0, y0, x1, y1);
+            }
+        }
+    }
+
+    // every segment intersecting the line has to be visited
+    private void assertCandidates(double x0, double y0, double x1, double y1) {
+        Coordinate p0 = new Coordinate(x0, y0);
+        Coordinate p1 = new Coordinate(x1, y1);
+        Set<Segment> visited = search(p0, p1);
+        LineIntersector intersector = new RobustLineIntersector();
+        for (Segment s : segments) {
+            intersector.computeIntersection(p0, p1, s.segment().p0, s.segment().p1);
+            if (intersector.hasIntersection()) {
+                assertTrue(s + " missed by " + p0 + " " + p1, visited.contains(s));
+            }
+        }
+    }
+
+    private void assertNoCandidates(double x0, double y0, double x1, double y1) {
+        Set<Segment> visited = search(new Coordinate(x0, y0), new Coordinate(x1, y1));
+        assertTrue(visited.toString(), visited.isEmpty());
+    }
+
+    private Set<Segment> search(Coordinate p0, Coordinate p1) {
+        Set<Segment> visited = new HashSet<>();
+        grid.search(p0, p1, (area, q0, q1) -> visited.add(new Segment(area, q0, q1)));
+        return visited;
+    }
+
+    // multiples of a quarter within the cell, including its corners
+    private static double offset(Random random) {
+        return random.nextInt(9) * CELL / 8;
+    }
+
+    private static double latticeCoordinate(Random random) {
+        return random.nextInt(41) * 0.25 - 1;
+    }
+
+    private record Segment(int area, LineSegment segment) {
+        private Segment(int area, Coordinate q0, Coordinate q1) {
+            this(area, new LineSegment(q0, q1));
+        }
+    }
+}